@@ -0,0 +1,38 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for moving and spinning the ball, done once per tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BallBenchmark {
+    private Ball ball;
+    private int direction = 1;
+
+    @Setup
+    public void setup() {
+        ball = new Ball(10, 400, 500);
+    }
+
+    @Benchmark
+    public Ball rotateBall() {
+        ball.rotateBall(1);
+        return ball;
+    }
+
+    @Benchmark
+    public Ball moveAndRotate() {
+        direction = -direction;
+        ball.moveBall(3 * direction, -3 * direction);
+        ball.rotateBall(1);
+        return ball;
+    }
+}
@@ -0,0 +1,69 @@
+package game;
+
+import java.awt.Color;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for ball-versus-block collision at increasing grid sizes.
+ * The ball is kept just clear of the blocks so no block is destroyed and
+ * every invocation does the same work.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockManagerBenchmark {
+    @Param({"5x11", "100x100", "1000x1000"})
+    public String grid;
+
+    private BlockManager blockManager;
+    private BlockStore blockStore;
+    private Ball ball;
+    private Contact contact;
+
+    @Setup
+    public void setup() {
+        String[] size = grid.split("x");
+        int rows = Integer.parseInt(size[0]);
+        int cols = Integer.parseInt(size[1]);
+        Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN,
+                Color.BLUE};
+
+        blockManager = new BlockManager();
+        blockManager.createBlockGrid(rows, cols, 60, 20, 20, 50, 10, colors);
+        blockStore = new BlockStore(rows * cols);
+        blockStore.createBlockGrid(rows, cols, 60, 20, 20, 50, 10, colors);
+
+        // Blocks are drawn a quarter of their size up from their position,
+        // so the last row ends 15 pixels below its row's y-coordinate.
+        double gridBottom = 50 + (rows - 1) * 30 + 15;
+        ball = new Ball(10, 20 + (cols / 2) * 70, (int)gridBottom + 11);
+        contact = new Contact();
+    }
+
+    @Benchmark
+    public int checkCollisions() {
+        return blockManager.checkCollisions(ball);
+    }
+
+    @Benchmark
+    public int checkCollisionsStore() {
+        return blockStore.checkCollisions(ball);
+    }
+
+    /** A ball moving fast enough to cross several rows in one tick. */
+    @Benchmark
+    public boolean sweep() {
+        contact.reset();
+        return blockManager.sweep(ball, 3, 100, contact);
+    }
+
+    @Benchmark
+    public boolean allBlocksDestroyed() {
+        return blockManager.allBlocksDestroyed();
+    }
+}
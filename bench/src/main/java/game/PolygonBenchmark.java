@@ -0,0 +1,54 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for the polygon transform and point-in-polygon test.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PolygonBenchmark {
+    private Polygon block;
+    private Polygon hexagon;
+    private Point inside;
+    private Point outside;
+
+    @Setup
+    public void setup() {
+        block = new Polygon(new Point[] {
+            new Point(0, 0), new Point(60, 0), new Point(60, 20), new Point(0, 20)
+        }, new Point(100, 100), 0);
+        hexagon = new Polygon(6, 10, new Point(400, 500), 0);
+        inside = new Point(110, 105);
+        outside = new Point(10, 10);
+    }
+
+    /** Transform of a polygon that has not moved since the last call. */
+    @Benchmark
+    public Point[] getPointsStatic() {
+        return block.getPoints();
+    }
+
+    /** Transform of a polygon that rotates every call, like the ball. */
+    @Benchmark
+    public Point[] getPointsRotating() {
+        hexagon.rotate(1);
+        return hexagon.getPoints();
+    }
+
+    @Benchmark
+    public boolean containsHit() {
+        return block.contains(inside);
+    }
+
+    @Benchmark
+    public boolean containsMiss() {
+        return block.contains(outside);
+    }
+}
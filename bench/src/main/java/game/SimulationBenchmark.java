@@ -0,0 +1,61 @@
+package game;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks for a whole game tick and for drawing a whole frame.
+ * The paddle follows the ball so the game stays in play; a finished game
+ * is restarted between invocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+    private Simulation simulation;
+    private BufferedImage image;
+    private Graphics2D brush;
+
+    @Setup
+    public void setup() {
+        simulation = new Simulation(800, 600);
+        image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        brush = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        brush.dispose();
+    }
+
+    @Benchmark
+    public long tick() {
+        if (simulation.isGameOver() || simulation.isWon()) {
+            simulation.restart();
+        }
+        if (!simulation.isStarted()) {
+            simulation.start();
+        }
+        // Aim slightly off center so the ball never settles into a vertical loop.
+        double target = simulation.getPaddle().getX() + 40;
+        double ballX = simulation.getBall().getX();
+        simulation.setMovingLeft(ballX < target - 5);
+        simulation.setMovingRight(ballX > target + 5);
+        simulation.tick();
+        return simulation.getTickCount();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        simulation.getBlockManager().paint(brush);
+        simulation.getPaddle().paint(brush);
+        simulation.getBall().paint(brush);
+        return image;
+    }
+}
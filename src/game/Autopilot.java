@@ -0,0 +1,207 @@
+package game;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Controller that moves the paddle to where the ball will come down,
+ * worked out in advance rather than by chasing the ball. The ball's path
+ * is cast as a ray: straight legs between the walls, the ceiling and the
+ * blocks, each block found by sweeping the ball along the leg, until the
+ * path reaches the paddle's height. A prediction only changes when a
+ * ball's velocity does or a block goes, so most ticks cost a few
+ * comparisons, and thousands of games can run on one core.
+ *
+ * Like {@link BallTracker} it shifts its aim after every paddle hit, so
+ * the ball does not settle into a loop, and serves whenever the ball is
+ * waiting. The aim is kept on the paddle's face.
+ */
+public class Autopilot implements PaddleController {
+    /** Most straight legs followed before giving up on a prediction. */
+    public static final int MAX_LEGS = 32;
+
+    /** Ticks after which an endless game's predictions are made afresh. */
+    public static final int ENDLESS_REPLAN_TICKS = 20;
+
+    private final double aimOffset;
+    private final double deadZone;
+    private final Contact probe = new Contact();
+
+    // What each ball's prediction was made from and what it found,
+    // indexed like the simulation's balls
+    private Ball[] planned = new Ball[4];
+    private double[] plannedSpeedX = new double[4], plannedSpeedY = new double[4];
+    private double[] landingX = new double[4];
+    private long[] landingTick = new long[4];
+    private int plannedBlocks = -1;
+    private long plannedAt;
+
+    /**
+     * Creates an autopilot.
+     *
+     * @param aimOffset Where to meet the ball, relative to the paddle's
+     *        center; held to the paddle's width
+     * @param deadZone How far off target the paddle may be before moving
+     */
+    public Autopilot(double aimOffset, double deadZone) {
+        this.aimOffset = aimOffset;
+        this.deadZone = deadZone;
+    }
+
+    @Override
+    public void update(Simulation simulation) {
+        if (simulation.isGameOver() || simulation.isWon()) {
+            return;
+        }
+        if (!simulation.isStarted()) {
+            simulation.start();
+        }
+
+        List<Ball> balls = simulation.getBalls();
+        int count = balls.size();
+        if (planned.length < count) {
+            int capacity = Math.max(count, planned.length * 2);
+            planned = Arrays.copyOf(planned, capacity);
+            plannedSpeedX = Arrays.copyOf(plannedSpeedX, capacity);
+            plannedSpeedY = Arrays.copyOf(plannedSpeedY, capacity);
+            landingX = Arrays.copyOf(landingX, capacity);
+            landingTick = Arrays.copyOf(landingTick, capacity);
+        }
+
+        // Any block going can change any path
+        long tick = simulation.getTickCount();
+        EndlessField field = simulation.getEndlessField();
+        int blocks = field != null ? field.getRemainingBlockCount()
+                : simulation.getBlockManager().getRemainingBlockCount();
+        boolean stale = blocks != plannedBlocks || (field != null
+                && tick - plannedAt >= ENDLESS_REPLAN_TICKS);
+        if (stale) {
+            plannedBlocks = blocks;
+            plannedAt = tick;
+        }
+
+        // Meet whichever ball comes down first
+        double target = Double.NaN;
+        long first = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            Ball ball = balls.get(i);
+            if (stale || planned[i] != ball || plannedSpeedX[i] != ball.getSpeedX()
+                    || plannedSpeedY[i] != ball.getSpeedY()) {
+                planned[i] = ball;
+                plannedSpeedX[i] = ball.getSpeedX();
+                plannedSpeedY[i] = ball.getSpeedY();
+                predict(simulation, ball, i);
+            }
+            if (landingTick[i] < first) {
+                first = landingTick[i];
+                target = landingX[i];
+            }
+        }
+        if (Double.isNaN(target)) {
+            return;
+        }
+
+        // Aim within the paddle's face, so an offset can never miss the ball
+        Paddle paddle = simulation.getPaddle();
+        Point[] points = paddle.getPoints();
+        double minX = points[0].getX(), maxX = minX;
+        for (Point p : points) {
+            minX = Math.min(minX, p.getX());
+            maxX = Math.max(maxX, p.getX());
+        }
+        double reach = Math.max(0, (maxX - minX) / 2 - balls.get(0).getRadius());
+        double offset = aimOffset + (simulation.getPaddleHits() * 13) % 31 - 15;
+        double aim = (minX + maxX) / 2 + Math.max(-reach, Math.min(reach, offset));
+        boolean left = target < aim - deadZone;
+        boolean right = target > aim + deadZone;
+
+        // Only send changes, so recordings stay small
+        if (left != paddle.isMovingLeft()) {
+            simulation.setMovingLeft(left);
+        }
+        if (right != paddle.isMovingRight()) {
+            simulation.setMovingRight(right);
+        }
+    }
+
+    /**
+     * Follows one ball's path down to the paddle and stores where and when
+     * it gets there.
+     */
+    private void predict(Simulation simulation, Ball ball, int i) {
+        double radius = ball.getRadius();
+        double x = ball.getX(), y = ball.getY();
+        double speedX = ball.getSpeedX(), speedY = ball.getSpeedY();
+        double landY = simulation.getPaddle().getTop() - radius;
+        double right = simulation.getWidth() - radius;
+        BlockManager blocks = simulation.getBlockManager();
+        EndlessField field = simulation.getEndlessField();
+
+        double ticks = 0;
+        for (int leg = 0; leg < MAX_LEGS && y < landY; leg++) {
+            if (speedY == 0 && speedX == 0) {
+                break;
+            }
+
+            // The leg ends at a wall, the ceiling or the paddle's height
+            double time = Double.POSITIVE_INFINITY;
+            if (speedX > 0) {
+                time = Math.max(0, (right - x) / speedX);
+            } else if (speedX < 0) {
+                time = Math.max(0, (radius - x) / speedX);
+            }
+            if (speedY > 0) {
+                time = Math.min(time, (landY - y) / speedY);
+            } else if (speedY < 0) {
+                time = Math.min(time, Math.max(0, (radius - y) / speedY));
+            }
+            if (time == Double.POSITIVE_INFINITY) {
+                break;
+            }
+
+            // Unless a block comes first; swept in short steps so each
+            // search covers only a few grid cells
+            double step = Math.max(1, 4 * radius / Math.hypot(speedX, speedY));
+            double done = 0;
+            boolean hit = false;
+            while (done < time && !hit) {
+                double part = Math.min(step, time - done);
+                double fromX = x + speedX * done, fromY = y + speedY * done;
+                probe.reset();
+                blocks.sweep(fromX, fromY, radius, speedX * part, speedY * part, probe);
+                if (field != null) {
+                    field.sweep(fromX, fromY, radius, speedX * part, speedY * part, probe);
+                }
+                if (probe.hasHit()) {
+                    hit = true;
+                    part *= probe.getTime();
+                }
+                done += part;
+            }
+
+            x += speedX * done;
+            y += speedY * done;
+            ticks += done;
+            if (hit) {
+                // Bounce as the simulation does: off the face the normal
+                // mostly points along
+                if (Math.abs(probe.getNormalX()) > Math.abs(probe.getNormalY())) {
+                    speedX = probe.getNormalX() > 0 ? Math.abs(speedX) : -Math.abs(speedX);
+                } else {
+                    speedY = probe.getNormalY() > 0 ? Math.abs(speedY) : -Math.abs(speedY);
+                }
+            } else if (y < landY) {
+                if (x >= right) {
+                    speedX = -Math.abs(speedX);
+                } else if (x <= radius) {
+                    speedX = Math.abs(speedX);
+                }
+                if (y <= radius) {
+                    speedY = Math.abs(speedY);
+                }
+            }
+        }
+        landingX[i] = x;
+        landingTick[i] = simulation.getTickCount() + (long)Math.ceil(ticks);
+    }
+}
@@ -1,6 +1,7 @@
 package game;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 
 /**
  * Represents the ball in the Breakout game.
@@ -10,6 +11,8 @@ import java.awt.*;
  */
 public class Ball extends Polygon {
 	private int radius;
+	private double speedX, speedY;
+	private BufferedImage[] frames;
 	private Polygon triangleHolder;
 	private StarPoint[] triangles = new StarPoint[6];
 
@@ -63,19 +66,69 @@ public class Ball extends Polygon {
 	 * @param xDist The distance to move in the x direction
 	 * @param yDist The distance to move in the y direction
 	 */
-	public void moveBall(int xDist, int yDist) {
-		position.setX(position.getX() + xDist);
-		position.setY(position.getY() + yDist);
-		triangleHolder.position = this.position;
+	public void moveBall(double xDist, double yDist) {
+		setPosition(getX() + xDist, getY() + yDist);
+		triangleHolder.setPosition(getX(), getY());
 		rotateBall(0);
 	}
 
+	/**
+	 * Puts the ball back at the given position with its starting rotation,
+	 * as a new ball would be, reusing its shapes. The speed is left as is.
+	 *
+	 * @param x The new x-coordinate of the ball's position
+	 * @param y The new y-coordinate of the ball's position
+	 */
+	public void reset(double x, double y) {
+		setPosition(x, y);
+		setRotation(0);
+		triangleHolder.setPosition(x, y);
+		triangleHolder.setRotation(0);
+		Point[] points = triangleHolder.getPoints();
+
+		for (int i = 0; i < 6; i++) {
+			triangles[i].setPosition(points[i]);
+			triangles[i].setRotation(60 * i);
+		}
+	}
+
 	/**
 	 * Renders the ball on the screen.
+	 * Draws the pre-rendered frame for the ball's current rotation.
 	 *
 	 * @param brush The graphics context to paint on
 	 */
 	public void paint(Graphics brush) {
+		if (frames == null) {
+			frames = SpriteCache.ball(radius);
+		}
+		int frame = ((int)Math.round(getRotation()) % 360 + 360) % 360;
+		int center = SpriteCache.ballCenter(radius);
+
+		brush.drawImage(frames[frame], (int)Math.round(getX()) - center,
+				(int)Math.round(getY()) - center, null);
+	}
+
+	/**
+	 * Gets the area of the screen that {@link #paint(Graphics)} draws over.
+	 *
+	 * @param out The rectangle to fill in
+	 * @return out, holding the ball's painted bounds
+	 */
+	public Rectangle getPaintBounds(Rectangle out) {
+		int center = SpriteCache.ballCenter(radius);
+		out.setBounds((int)Math.round(getX()) - center,
+				(int)Math.round(getY()) - center, center * 2, center * 2);
+		return out;
+	}
+
+	/**
+	 * Renders the ball's triangles as polygons.
+	 * Used to draw the frames of the sprite cache.
+	 *
+	 * @param brush The graphics context to paint on
+	 */
+	void paintShape(Graphics brush) {
 
 		for (int i = 0; i < 6; i++) {
 			Point[] points = triangles[i].getPoints();
@@ -102,11 +155,40 @@ public class Ball extends Polygon {
 		Point[] points = triangleHolder.getPoints();
 
 		for (int i = 0; i < 6; i++) {
-			triangles[i].position = points[i];
+			triangles[i].setPosition(points[i]);
 			triangles[i].rotate(degrees);
 		}
 	}
 
+	/**
+	 * Sets the velocity of the ball.
+	 *
+	 * @param speedX The distance moved in the x direction per tick
+	 * @param speedY The distance moved in the y direction per tick
+	 */
+	public void setSpeed(double speedX, double speedY) {
+		this.speedX = speedX;
+		this.speedY = speedY;
+	}
+
+	/**
+	 * Gets the horizontal velocity of the ball.
+	 *
+	 * @return The distance moved in the x direction per tick
+	 */
+	public double getSpeedX() {
+		return speedX;
+	}
+
+	/**
+	 * Gets the vertical velocity of the ball.
+	 *
+	 * @return The distance moved in the y direction per tick
+	 */
+	public double getSpeedY() {
+		return speedY;
+	}
+
 	/**
 	 * Gets the radius of the ball.
 	 *
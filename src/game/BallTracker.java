@@ -0,0 +1,55 @@
+package game;
+
+/**
+ * Scripted controller that keeps the paddle under the lowest ball.
+ * It aims off the paddle's center and shifts its aim a little after every
+ * paddle hit, since a ball always met at the same spot settles into a loop
+ * that never reaches the last blocks. It also serves the ball whenever it
+ * is waiting.
+ */
+public class BallTracker implements PaddleController {
+    private final double aimOffset;
+    private final double deadZone;
+
+    /**
+     * Creates a tracker.
+     *
+     * @param aimOffset Where to meet the ball, relative to the paddle's center
+     * @param deadZone How far off target the ball may be before moving
+     */
+    public BallTracker(double aimOffset, double deadZone) {
+        this.aimOffset = aimOffset;
+        this.deadZone = deadZone;
+    }
+
+    @Override
+    public void update(Simulation simulation) {
+        if (simulation.isGameOver() || simulation.isWon()) {
+            return;
+        }
+        if (!simulation.isStarted()) {
+            simulation.start();
+        }
+
+        Ball lowest = null;
+        for (Ball ball : simulation.getBalls()) {
+            if (lowest == null || ball.getY() > lowest.getY()) {
+                lowest = ball;
+            }
+        }
+
+        Paddle paddle = simulation.getPaddle();
+        double target = paddle.getCenterX() + aimOffset
+                + (simulation.getPaddleHits() * 13) % 31 - 15;
+        boolean left = lowest.getX() < target - deadZone;
+        boolean right = lowest.getX() > target + deadZone;
+
+        // Only send changes, so recordings stay small
+        if (left != paddle.isMovingLeft()) {
+            simulation.setMovingLeft(left);
+        }
+        if (right != paddle.isMovingRight()) {
+            simulation.setMovingRight(right);
+        }
+    }
+}
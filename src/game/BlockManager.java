@@ -1,34 +1,70 @@
 package game;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 
 /**
  * Manages the blocks in the Breakout game.
  * Handles block creation, collision detection, and rendering.
  */
 public class BlockManager {
+    /** Hit points of a block that can never be destroyed. */
+    public static final int INDESTRUCTIBLE = 255;
+
     private ArrayList<Block> blocks;
+    private BitSet live = new BitSet(); // which blocks are visible, by id
+    private int liveCount = 0; // visible blocks that can be destroyed
+    private int toughBlocks; // blocks taking more than one hit
+    private BlockTree index; // null until built, and after blocks are added
+    private QueryResults candidates = new QueryResults();
+    private QueryResults painted = new QueryResults();
+    private Rectangle clip = new Rectangle();
+    private ArrayList<BlockListener> listeners = new ArrayList<BlockListener>();
+
+    /**
+     * Receives each block as it is destroyed.
+     */
+    public interface BlockListener {
+        /**
+         * Called once a block has been hit and made invisible.
+         *
+         * @param block The destroyed block
+         */
+        void onBlockDestroyed(Block block);
+
+        /**
+         * Called when the blocks change all at once: after
+         * {@link BlockManager#reviveAll()}, {@link BlockManager#load} or
+         * {@link BlockManager#readState}.
+         *
+         * @param manager The manager whose blocks changed
+         */
+        void onBlocksReset(BlockManager manager);
+    }
 
     /**
      * Represents a block in the game.
      * Each block has a position, size, color, and visibility state.
      */
     public class Block extends Polygon {
-        private boolean visible;
+        private int hitPoints, startHitPoints;
         private Color color;
         int height;
+        private int id;
+        private double minX, minY, maxX, maxY;
+        private BufferedImage sprite;
+        private int spriteX, spriteY;
 
-        /**
-         * Creates a new block with the specified dimensions and position.
-         *
-         * @param width The width of the block
-         * @param height The height of the block
-         * @param posX The x-coordinate of the block's position
-         * @param posY The y-coordinate of the block's position
-         * @param blockColor The color of the block
-         */
-        public Block(int width, int height, int posX, int posY, Color blockColor) {
+        // Only the manager makes blocks, adding each to its list at once, so
+        // a block counts itself in as it is made. Levels place blocks by
+        // their world rectangle, which puts the position on a quarter pixel
+        // when a side is not a multiple of 4.
+        private Block(int width, int height, double posX, double posY,
+                Color blockColor, int hitPoints) {
             super(new Point[] {
                 new Point(0, 0),
                 new Point(width, 0),
@@ -36,9 +72,29 @@ public class BlockManager {
                 new Point(0, height)
             }, new Point(posX, posY), 0);
             
-            this.visible = true;
+            this.hitPoints = this.startHitPoints =
+                    Math.max(1, Math.min(INDESTRUCTIBLE, hitPoints));
+            if (startHitPoints > 1) {
+                toughBlocks++;
+            }
+            if (startHitPoints != INDESTRUCTIBLE) {
+                liveCount++;
+            }
             this.color = blockColor;
             this.height = height;
+            this.id = blocks.size();
+            live.set(id);
+
+            // Blocks never move, so their world bounds are fixed at creation.
+            Point[] points = getPoints();
+            minX = maxX = points[0].getX();
+            minY = maxY = points[0].getY();
+            for (Point p : points) {
+                minX = Math.min(minX, p.getX());
+                maxX = Math.max(maxX, p.getX());
+                minY = Math.min(minY, p.getY());
+                maxY = Math.max(maxY, p.getY());
+            }
         }
 
         /**
@@ -48,7 +104,7 @@ public class BlockManager {
          * @return true if the ball collides with this block, false otherwise
          */
         public boolean checkCollision(Ball ball) {
-            if (!visible) {
+            if (!live.get(id)) {
                 return false;
             }
             
@@ -63,10 +119,51 @@ public class BlockManager {
         }
 
         /**
-         * Handles the collision by making the block invisible.
+         * Handles the collision by taking a hit point from the block;
+         * an indestructible block takes none. The last hit makes it
+         * invisible: the block is dropped from the
+         * block tree, and the manager's listeners are told it is gone.
          */
         public void handleCollision() {
-            this.visible = false;
+            if (!live.get(id) || startHitPoints == INDESTRUCTIBLE
+                    || --hitPoints > 0) {
+                return;
+            }
+            if (index != null) {
+                index.remove(id);
+            }
+            live.clear(id);
+            liveCount--;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onBlockDestroyed(this);
+            }
+        }
+
+        /**
+         * Gets the number of hits the block can still take.
+         *
+         * @return The hit points left, 0 once the block is destroyed
+         */
+        public int getHitPoints() {
+            return live.get(id) ? hitPoints : 0;
+        }
+
+        /**
+         * Checks if the block can never be destroyed.
+         *
+         * @return true if hits leave the block standing, false otherwise
+         */
+        public boolean isIndestructible() {
+            return startHitPoints == INDESTRUCTIBLE;
+        }
+
+        /**
+         * Gets the block's index in its manager, its place in creation order.
+         *
+         * @return The index, as passed to {@link BlockManager#getBlock(int)}
+         */
+        public int getId() {
+            return id;
         }
 
         /**
@@ -75,36 +172,41 @@ public class BlockManager {
          * @return true if the block is visible, false otherwise
          */
         public boolean isVisible() {
-            return visible;
+            return live.get(id);
         }
 
         /**
          * Renders the block on the screen.
+         * Blocks of the same size and color share one pre-rendered image.
          *
          * @param brush The graphics context to paint on
          */
         public void paint(Graphics brush) {
-            if (!visible) {
+            if (!live.get(id)) {
                 return;
             }
             
-            Point[] points = super.getPoints();
-            int[] xVals = new int[points.length];
-            int[] yVals = new int[points.length];
-            
-            for (int i = 0; i < points.length; i++) {
-                xVals[i] = (int)Math.round(points[i].getX());
-                yVals[i] = (int)Math.round(points[i].getY());
+            if (sprite == null) {
+                spriteX = (int)Math.round(minX);
+                spriteY = (int)Math.round(minY);
+                sprite = SpriteCache.box((int)Math.round(maxX) - spriteX,
+                        (int)Math.round(maxY) - spriteY, color, Color.BLACK);
             }
-            
-            Color prevColor = brush.getColor();
-            brush.setColor(this.color);
-            brush.fillPolygon(xVals, yVals, points.length);
-            
-            brush.setColor(Color.BLACK);
-            brush.drawPolygon(xVals, yVals, points.length);
-            
-            brush.setColor(prevColor);
+            brush.drawImage(sprite, spriteX, spriteY, null);
+        }
+
+        /**
+         * Gets the area of the screen that {@link #paint(Graphics)} draws
+         * over while the block is visible, outline included.
+         *
+         * @param out The rectangle to fill in
+         * @return out, holding the block's painted bounds
+         */
+        public Rectangle getPaintBounds(Rectangle out) {
+            int left = (int)Math.round(minX), top = (int)Math.round(minY);
+            out.setBounds(left, top, (int)Math.round(maxX) - left + 1,
+                    (int)Math.round(maxY) - top + 1);
+            return out;
         }
     }
 
@@ -115,6 +217,24 @@ public class BlockManager {
         blocks = new ArrayList<Block>();
     }
 
+    /**
+     * Registers a listener to be told whenever a block is destroyed.
+     *
+     * @param listener The listener to add
+     */
+    public void addBlockListener(BlockListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addBlockListener}.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeBlockListener(BlockListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Creates a new block and adds it to the manager.
      *
@@ -127,8 +247,27 @@ public class BlockManager {
      */
     public Block createBlock(int width, int height, int posX, int posY,
     		Color blockColor) {
-        Block block = new Block(width, height, posX, posY, blockColor);
+        return createBlock(width, height, posX, posY, blockColor, 1);
+    }
+
+    /**
+     * Creates a new block taking the given number of hits and adds it to
+     * the manager.
+     *
+     * @param width The width of the block
+     * @param height The height of the block
+     * @param posX The x-coordinate of the block's position
+     * @param posY The y-coordinate of the block's position
+     * @param blockColor The color of the block
+     * @param hitPoints The hits the block takes to destroy, or
+     *        {@link #INDESTRUCTIBLE}
+     * @return The created block
+     */
+    public Block createBlock(int width, int height, int posX, int posY,
+            Color blockColor, int hitPoints) {
+        Block block = new Block(width, height, posX, posY, blockColor, hitPoints);
         blocks.add(block);
+        index = null;
         return block;
     }
     
@@ -147,42 +286,262 @@ public class BlockManager {
     public void createBlockGrid(int rows, int cols, int blockWidth, 
     		int blockHeight, int startX, int startY, int padding, 
     		Color[] colors) {
+        createBlockGrid(rows, cols, blockWidth, blockHeight, startX, startY,
+                padding, colors, new int[] {1});
+    }
+
+    /**
+     * Creates a grid of blocks whose rows take the given numbers of hits.
+     *
+     * @param rows The number of rows in the grid
+     * @param cols The number of columns in the grid
+     * @param blockWidth The width of each block
+     * @param blockHeight The height of each block
+     * @param startX The starting x-coordinate of the grid
+     * @param startY The starting y-coordinate of the grid
+     * @param padding The padding between blocks
+     * @param colors The colors to use for the rows
+     * @param hitPoints The hit points to use for the rows, cycled like the
+     *        colors; {@link #INDESTRUCTIBLE} for rows that never go
+     */
+    public void createBlockGrid(int rows, int cols, int blockWidth,
+            int blockHeight, int startX, int startY, int padding,
+            Color[] colors, int[] hitPoints) {
         for (int row = 0; row < rows; row++) {
             Color rowColor = colors[row % colors.length];
+            int rowHits = hitPoints[row % hitPoints.length];
             
             for (int col = 0; col < cols; col++) {
                 int x = startX + col * (blockWidth + padding);
                 int y = startY + row * (blockHeight + padding);
                 
-                createBlock(blockWidth, blockHeight, x, y, rowColor);
+                createBlock(blockWidth, blockHeight, x, y, rowColor, rowHits);
             }
         }
+        buildIndex();
+    }
+
+    /**
+     * Replaces the blocks with a level read from a {@link LevelPack}.
+     * Blocks are created as they are decoded from the buffer, which is
+     * usually a view of the mapped pack file.
+     *
+     * @param level The level's bytes, as from {@link LevelPack#level(int)}
+     * @throws IllegalArgumentException if the level is malformed
+     */
+    public void load(ByteBuffer level) {
+        blocks.clear();
+        live.clear();
+        liveCount = 0;
+        toughBlocks = 0;
+        index = null;
+        LevelPack.read(level, new LevelPack.BlockSink() {
+            private HashMap<Integer, Color> colors = new HashMap<Integer, Color>();
+
+            @Override
+            public void begin(int blockCount) {
+                blocks.ensureCapacity(blockCount);
+            }
+
+            @Override
+            public void block(int left, int top, int width, int height,
+                    int argb, int hits) {
+                Color color = colors.get(argb);
+                if (color == null) {
+                    color = new Color(argb, true);
+                    colors.put(argb, color);
+                }
+                // A Polygon sits a quarter of its size up and left of its position.
+                blocks.add(new Block(width, height, left + width / 4.0,
+                        top + height / 4.0, color, hits));
+            }
+        });
+        buildIndex();
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onBlocksReset(this);
+        }
+    }
+
+    /**
+     * Makes every destroyed block visible again with all its hit points,
+     * for replaying a level
+     * without building it anew. The blocks and the block tree are
+     * reused as they are.
+     */
+    public void reviveAll() {
+        for (int i = 0; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            block.hitPoints = block.startHitPoints;
+            if (live.get(i)) {
+                continue;
+            }
+            live.set(i);
+            liveCount++; // only destructible blocks are ever gone
+            if (index != null) {
+                index.restore(block.id);
+            }
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onBlocksReset(this);
+        }
+    }
+
+    /**
+     * Gets the most bytes {@link #writeState} can write for these blocks.
+     *
+     * @return The size in bytes
+     */
+    public int getStateSize() {
+        return 4 + (blocks.size() + 63) / 64 * 8 + toughBlocks;
+    }
+
+    /**
+     * Writes which blocks are standing and how many hits each has left: the
+     * block count, a bit per block, then a byte per standing block that
+     * takes more than one hit.
+     *
+     * @param out The buffer to write to
+     */
+    public void writeState(ByteBuffer out) {
+        int count = blocks.size();
+        out.putInt(count);
+        for (int from = 0; from < count; from += 64) {
+            long word = 0;
+            for (int i = live.nextSetBit(from); i >= 0 && i < from + 64
+                    && i < count; i = live.nextSetBit(i + 1)) {
+                word |= 1L << (i - from);
+            }
+            out.putLong(word);
+        }
+        if (toughBlocks > 0) {
+            for (int i = live.nextSetBit(0); i >= 0 && i < count;
+                    i = live.nextSetBit(i + 1)) {
+                Block block = blocks.get(i);
+                if (block.startHitPoints > 1) {
+                    out.put((byte)block.hitPoints);
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts the blocks back in a state written by {@link #writeState}.
+     * Only the blocks that differ are changed; if any appeared or went, the
+     * listeners are told the blocks were reset.
+     *
+     * @param in The buffer to read from
+     * @throws IllegalArgumentException if the state is for a different
+     *         number of blocks
+     */
+    public void readState(ByteBuffer in) {
+        int count = in.getInt();
+        if (count != blocks.size()) {
+            throw new IllegalArgumentException("State is for " + count
+                    + " blocks, not " + blocks.size());
+        }
+        boolean changed = false;
+        for (int from = 0; from < count; from += 64) {
+            long word = in.getLong();
+            for (int i = from; i < Math.min(from + 64, count); i++) {
+                Block block = blocks.get(i);
+                boolean visible = (word & (1L << (i - from))) != 0;
+                block.hitPoints = visible ? block.startHitPoints : 0;
+                if (visible == live.get(i)) {
+                    continue;
+                }
+                live.set(i, visible);
+                liveCount += visible ? 1 : -1;
+                changed = true;
+                if (index == null) {
+                    continue;
+                }
+                if (visible) {
+                    index.restore(block.id);
+                } else {
+                    index.remove(block.id);
+                }
+            }
+        }
+        if (toughBlocks > 0) {
+            for (int i = live.nextSetBit(0); i >= 0 && i < count;
+                    i = live.nextSetBit(i + 1)) {
+                Block block = blocks.get(i);
+                if (block.startHitPoints > 1) {
+                    block.hitPoints = in.get() & 0xFF;
+                }
+            }
+        }
+        if (changed) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).onBlocksReset(this);
+            }
+        }
+    }
+
+    /**
+     * Builds the block tree if blocks were added since it was last built.
+     */
+    void ensureIndex() {
+        if (index == null) {
+            buildIndex();
+        }
+    }
+
+    /**
+     * Rebuilds the block tree over all blocks, visible or not, so any of
+     * them can be put back later.
+     */
+    private void buildIndex() {
+        int count = blocks.size();
+        double[] minX = new double[count];
+        double[] minY = new double[count];
+        double[] maxX = new double[count];
+        double[] maxY = new double[count];
+
+        for (int i = 0; i < count; i++) {
+            Block block = blocks.get(i);
+            minX[i] = block.minX;
+            minY[i] = block.minY;
+            maxX[i] = block.maxX;
+            maxY[i] = block.maxY;
+        }
+        index = new BlockTree(minX, minY, maxX, maxY, live, count);
     }
     
     /**
-     * Checks if the ball collides with any blocks and handles the collisions.
+     * Checks if the ball collides with any blocks and handles the first
+     * collision found; a ball rebounds off one block a tick.
      *
      * @param ball The ball to check collisions with
      * @return 0 if no collision, 1 for side collision, 2 for bottom collision, 3 for top collision
      */
     public int checkCollisions(Ball ball) {
         int collisionOccurred = 0;
+        ensureIndex();
         
-        for (Block block : blocks) {
+        // Only blocks whose bounds the ball reaches can be touching it.
+        double x = ball.getX(), y = ball.getY();
+        double reach = ball.getRadius() + 1;
+        int count = index.query(x - reach, y - reach, x + reach, y + reach,
+                candidates);
+        
+        for (int i = 0; i < count; i++) {
+            Block block = blocks.get(candidates.get(i));
             if (block.isVisible() && block.checkCollision(ball)) {
                 block.handleCollision();
                 
-                if (ball.position.getY() + ball.getRadius() > 
-                		block.position.getY() + block.height / 2 && 
-                		ball.position.getY() - ball.getRadius() < 
-                		block.position.getY() - block.height / 2) {
+                if (ball.getY() + ball.getRadius() > 
+                		block.getY() + block.height / 2 && 
+                		ball.getY() - ball.getRadius() < 
+                		block.getY() - block.height / 2) {
                 	collisionOccurred = 1;
-                } else if (ball.position.getY() + ball.getRadius() > 
-                			block.position.getY() + block.height / 2) {
+                } else if (ball.getY() + ball.getRadius() > 
+                			block.getY() + block.height / 2) {
                 	collisionOccurred = 2;
                 } else {
                 	collisionOccurred = 3;
                 }
+                break;
             }
         }
         
@@ -190,42 +549,134 @@ public class BlockManager {
     }
 
     /**
-     * Checks if all blocks have been destroyed.
+     * Sweeps the ball along a move and finds the first block it would touch.
+     * Every block near the whole move is searched, so a fast ball cannot
+     * pass through a block between two ticks; regions of the block tree the
+     * move does not reach are skipped whole. The block itself
+     * is left untouched; see {@link #getBlock(int)}.
+     * Sweeps only read the blocks, so several threads may sweep at once
+     * with their own contacts, provided the index has been built.
      *
-     * @return true if all blocks are invisible, false otherwise
+     * @param ball The ball at the start of the move
+     * @param dx The distance the ball moves in the x direction
+     * @param dy The distance the ball moves in the y direction
+     * @param contact Receives the block if it is hit before any earlier contact
+     * @return true if a block became the earliest contact, false otherwise
      */
-    public boolean allBlocksDestroyed() {
-        for (Block block : blocks) {
-            if (block.isVisible()) {
-                return false;
+    public boolean sweep(Ball ball, double dx, double dy, Contact contact) {
+        return sweep(ball.getX(), ball.getY(), ball.getRadius(), dx, dy, contact);
+    }
+
+    /**
+     * Sweeps a circle along a move and finds the first block it would touch,
+     * as {@link #sweep(Ball, double, double, Contact)} does for a ball.
+     * Used to look ahead along a path no ball has taken yet.
+     *
+     * @param x The x-coordinate of the circle's center at the start
+     * @param y The y-coordinate of the circle's center at the start
+     * @param radius The radius of the circle
+     * @param dx The distance the circle moves in the x direction
+     * @param dy The distance the circle moves in the y direction
+     * @param contact Receives the block if it is hit before any earlier contact
+     * @return true if a block became the earliest contact, false otherwise
+     */
+    public boolean sweep(double x, double y, double radius, double dx,
+            double dy, Contact contact) {
+        ensureIndex();
+        
+        QueryResults found = contact.candidates;
+        int count = index.query(Math.min(x, x + dx) - radius - 1,
+                Math.min(y, y + dy) - radius - 1,
+                Math.max(x, x + dx) + radius + 1,
+                Math.max(y, y + dy) + radius + 1, found);
+        
+        boolean hit = false;
+        for (int i = 0; i < count; i++) {
+            Block block = blocks.get(found.get(i));
+            if (live.get(block.id) && contact.sweepCircle(x, y, radius, dx, dy,
+                    block.minX, block.minY, block.maxX, block.maxY)) {
+                contact.setBlock(block.id);
+                hit = true;
             }
         }
-        return true;
+        return hit;
+    }
+    
+    /**
+     * Destroys a block outright, whatever hit points it has left, and tells
+     * the listeners. Used to follow a game played elsewhere.
+     *
+     * @param id The block's index
+     */
+    public void destroyBlock(int id) {
+        Block block = blocks.get(id);
+        block.hitPoints = 1;
+        block.handleCollision();
+    }
+
+    /**
+     * Gets the number of blocks, standing or destroyed.
+     *
+     * @return The number of blocks
+     */
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * Gets a block by the order it was created in.
+     *
+     * @param index The block's index
+     * @return The block
+     */
+    public Block getBlock(int index) {
+        return blocks.get(index);
+    }
+
+    /**
+     * Checks if all blocks that can be destroyed have been.
+     * The visible blocks are counted as they come and go, so this is a
+     * single comparison however many blocks there are.
+     *
+     * @return true if only indestructible blocks are left, false otherwise
+     */
+    public boolean allBlocksDestroyed() {
+        return liveCount == 0;
     }
     
     /**
      * Renders all visible blocks on the screen.
+     * Only the blocks still standing are visited, and if the brush is
+     * clipped, only those the block tree finds inside the clip.
      *
      * @param brush The graphics context to paint on
      */
     public void paint(Graphics brush) {
-        for (Block block : blocks) {
-            block.paint(brush);
+        BlockTree tree = index;
+        if (tree != null && brush.getClip() != null) {
+            brush.getClipBounds(clip);
+            int count = tree.query(clip.x - 1, clip.y - 1,
+                    clip.x + clip.width + 1, clip.y + clip.height + 1,
+                    painted);
+            for (int i = 0; i < count; i++) {
+                blocks.get(painted.get(i)).paint(brush);
+            }
+            return;
+        }
+        int count = blocks.size();
+        for (int i = live.nextSetBit(0); i >= 0 && i < count;
+                i = live.nextSetBit(i + 1)) {
+            blocks.get(i).paint(brush);
         }
     }
     
     /**
-     * Counts the number of remaining visible blocks.
+     * Counts the number of remaining visible blocks, not counting
+     * indestructible ones.
      *
-     * @return The number of visible blocks
+     * @return The number of visible blocks left to destroy
      */
     public int getRemainingBlockCount() {
-        int count = 0;
-        for (Block block : blocks) {
-            if (block.isVisible()) {
-                count++;
-            }
-        }
-        return count;
+        return liveCount;
     }
 }
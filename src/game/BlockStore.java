@@ -0,0 +1,364 @@
+package game;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Primitive-array block storage for very large levels.
+ * An alternative to {@link BlockManager} that keeps every block as a slot in
+ * parallel arrays instead of a {@link BlockManager.Block} object, so a level
+ * of any size costs a handful of arrays and collision checks do not allocate.
+ * Blocks are axis-aligned rectangles in world coordinates.
+ */
+public class BlockStore {
+    private double[] x, y, w, h;
+    private int[] argb;
+    private byte[] hits;
+    private BitSet live = new BitSet();
+    private int size = 0;
+    private int liveCount = 0; // live blocks that can be destroyed
+    private SpatialGrid index; // null until built, and after blocks are added
+    private QueryResults candidates = new QueryResults();
+
+    /**
+     * Default Constructor - empty store with room for a small level.
+     */
+    public BlockStore() {
+        this(64);
+    }
+
+    /**
+     * Creates an empty store sized for the given number of blocks.
+     *
+     * @param capacity The number of blocks to reserve space for
+     */
+    public BlockStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        w = new double[capacity];
+        h = new double[capacity];
+        argb = new int[capacity];
+        hits = new byte[capacity];
+    }
+
+    /**
+     * Adds a block covering the given world rectangle.
+     *
+     * @param left The x-coordinate of the block's left edge
+     * @param top The y-coordinate of the block's top edge
+     * @param width The width of the block
+     * @param height The height of the block
+     * @param color The block color as 0xAARRGGBB
+     * @return The slot of the new block
+     */
+    public int addBlock(double left, double top, double width, double height,
+            int color) {
+        if (size == x.length) {
+            ensureCapacity(size * 2);
+        }
+        int slot = size++;
+        x[slot] = left;
+        y[slot] = top;
+        w[slot] = width;
+        h[slot] = height;
+        argb[slot] = color;
+        hits[slot] = 1;
+        live.set(slot);
+        liveCount++;
+        index = null;
+        return slot;
+    }
+
+    /**
+     * Creates a grid of blocks with the specified dimensions and colors.
+     * Blocks land on exactly the same rectangles as the blocks
+     * {@link BlockManager#createBlockGrid} makes from the same arguments.
+     *
+     * @param rows The number of rows in the grid
+     * @param cols The number of columns in the grid
+     * @param blockWidth The width of each block
+     * @param blockHeight The height of each block
+     * @param startX The starting x-coordinate of the grid
+     * @param startY The starting y-coordinate of the grid
+     * @param padding The padding between blocks
+     * @param colors The colors to use for the rows
+     */
+    public void createBlockGrid(int rows, int cols, int blockWidth,
+            int blockHeight, int startX, int startY, int padding,
+            Color[] colors) {
+        ensureCapacity(size + rows * cols);
+        for (int row = 0; row < rows; row++) {
+            int rowColor = colors[row % colors.length].getRGB();
+
+            for (int col = 0; col < cols; col++) {
+                int posX = startX + col * (blockWidth + padding);
+                int posY = startY + row * (blockHeight + padding);
+
+                // A Polygon sits a quarter of its size up and left of its position.
+                addBlock(posX - blockWidth / 4.0, posY - blockHeight / 4.0,
+                        blockWidth, blockHeight, rowColor);
+            }
+        }
+        buildIndex();
+    }
+
+    /**
+     * Adds the blocks of a level read from a {@link LevelPack}, decoding
+     * them from the buffer straight into the store's arrays.
+     *
+     * @param level The level's bytes, as from {@link LevelPack#level(int)}
+     * @throws IllegalArgumentException if the level is malformed
+     */
+    public void load(ByteBuffer level) {
+        LevelPack.read(level, new LevelPack.BlockSink() {
+            @Override
+            public void begin(int blockCount) {
+                ensureCapacity(size + blockCount);
+            }
+
+            @Override
+            public void block(int left, int top, int width, int height,
+                    int color, int hitPoints) {
+                int slot = addBlock(left, top, width, height, color);
+                hits[slot] = (byte)Math.max(1, hitPoints);
+                if (hitPoints == BlockManager.INDESTRUCTIBLE) {
+                    liveCount--;
+                }
+            }
+        });
+        buildIndex();
+    }
+
+    /**
+     * Checks if the ball collides with any blocks and handles the collisions.
+     *
+     * @param ball The ball to check collisions with
+     * @return 0 if no collision, 1 for side collision, 2 for bottom collision, 3 for top collision
+     */
+    public int checkCollisions(Ball ball) {
+        int collisionOccurred = 0;
+        if (index == null) {
+            buildIndex();
+        }
+
+        double ballX = ball.getX(), ballY = ball.getY();
+        double radius = ball.getRadius();
+        double reach = radius + 1;
+        int count = index.query(ballX - reach, ballY - reach,
+                ballX + reach, ballY + reach, candidates);
+        Point[] ballPoints = ball.getPoints();
+
+        for (int i = 0; i < count; i++) {
+            int slot = candidates.get(i);
+            if (!live.get(slot) || !touches(slot, ballPoints)) {
+                continue;
+            }
+            hit(slot);
+
+            // Same heuristic as BlockManager, measured from the block's position.
+            double posY = y[slot] + h[slot] / 4;
+            int halfHeight = (int)h[slot] / 2;
+            if (ballY + radius > posY + halfHeight &&
+                    ballY - radius < posY - halfHeight) {
+                collisionOccurred = 1;
+            } else if (ballY + radius > posY + halfHeight) {
+                collisionOccurred = 2;
+            } else {
+                collisionOccurred = 3;
+            }
+        }
+
+        return collisionOccurred;
+    }
+
+    // Mirrors Polygon.contains for an axis-aligned rectangle.
+    private boolean touches(int slot, Point[] points) {
+        double left = x[slot], top = y[slot];
+        double right = left + w[slot], bottom = top + h[slot];
+        for (Point p : points) {
+            if (p.x > left && p.x <= right && p.y > top && p.y <= bottom) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sweeps the ball along a move and finds the first block it would touch.
+     * The block itself is left alive; see {@link #destroy(int)}.
+     *
+     * @param ball The ball at the start of the move
+     * @param dx The distance the ball moves in the x direction
+     * @param dy The distance the ball moves in the y direction
+     * @param contact Receives the slot if it is hit before any earlier contact
+     * @return true if a block became the earliest contact, false otherwise
+     */
+    public boolean sweep(Ball ball, double dx, double dy, Contact contact) {
+        if (index == null) {
+            buildIndex();
+        }
+
+        double ballX = ball.getX(), ballY = ball.getY();
+        double radius = ball.getRadius();
+        QueryResults found = contact.candidates;
+        int count = index.query(Math.min(ballX, ballX + dx) - radius - 1,
+                Math.min(ballY, ballY + dy) - radius - 1,
+                Math.max(ballX, ballX + dx) + radius + 1,
+                Math.max(ballY, ballY + dy) + radius + 1, found);
+
+        boolean hit = false;
+        for (int i = 0; i < count; i++) {
+            int slot = found.get(i);
+            if (live.get(slot) && contact.sweepCircle(ballX, ballY, radius,
+                    dx, dy, x[slot], y[slot], x[slot] + w[slot],
+                    y[slot] + h[slot])) {
+                contact.setBlock(slot);
+                hit = true;
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Takes a hit point from the block in the given slot, destroying it
+     * with the last one. Indestructible blocks take no hits.
+     *
+     * @param slot The slot of the block
+     * @return true if the block was destroyed by this hit, false otherwise
+     */
+    public boolean hit(int slot) {
+        if (!live.get(slot) || isIndestructible(slot)) {
+            return false;
+        }
+        int left = (hits[slot] & 0xFF) - 1;
+        hits[slot] = (byte)left;
+        if (left > 0) {
+            return false;
+        }
+        destroy(slot);
+        return true;
+    }
+
+    /**
+     * Destroys the block in the given slot, if it is still alive and not
+     * indestructible.
+     *
+     * @param slot The slot of the block
+     */
+    public void destroy(int slot) {
+        if (!live.get(slot) || isIndestructible(slot)) {
+            return;
+        }
+        live.clear(slot);
+        liveCount--;
+        if (index != null) {
+            index.remove(slot, x[slot], y[slot], x[slot] + w[slot],
+                    y[slot] + h[slot]);
+        }
+    }
+
+    /**
+     * Checks if the block in the given slot is still alive.
+     *
+     * @param slot The slot of the block
+     * @return true if the block has not been destroyed, false otherwise
+     */
+    public boolean isAlive(int slot) {
+        return live.get(slot);
+    }
+
+    /**
+     * Checks if the block in the given slot can never be destroyed.
+     *
+     * @param slot The slot of the block
+     * @return true if hits leave the block standing, false otherwise
+     */
+    public boolean isIndestructible(int slot) {
+        return (hits[slot] & 0xFF) == BlockManager.INDESTRUCTIBLE;
+    }
+
+    /**
+     * Checks if all blocks that can be destroyed have been.
+     *
+     * @return true if only indestructible blocks are alive, false otherwise
+     */
+    public boolean allBlocksDestroyed() {
+        return liveCount == 0;
+    }
+
+    /**
+     * Counts the number of remaining live blocks, not counting
+     * indestructible ones.
+     *
+     * @return The number of live blocks left to destroy
+     */
+    public int getRemainingBlockCount() {
+        return liveCount;
+    }
+
+    /**
+     * Gets the number of slots in use, live or destroyed.
+     *
+     * @return The number of blocks ever added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Renders all live blocks on the screen.
+     *
+     * @param brush The graphics context to paint on
+     */
+    public void paint(Graphics brush) {
+        Color prevColor = brush.getColor();
+        Color color = null;
+
+        for (int slot = live.nextSetBit(0); slot >= 0;
+                slot = live.nextSetBit(slot + 1)) {
+            // Rows share a color, so this allocates once per run of a color.
+            if (color == null || color.getRGB() != argb[slot]) {
+                color = new Color(argb[slot], true);
+            }
+            int left = (int)Math.round(x[slot]);
+            int top = (int)Math.round(y[slot]);
+            int width = (int)Math.round(x[slot] + w[slot]) - left;
+            int height = (int)Math.round(y[slot] + h[slot]) - top;
+
+            brush.setColor(color);
+            brush.fillRect(left, top, width, height);
+            brush.setColor(Color.BLACK);
+            brush.drawRect(left, top, width, height);
+        }
+
+        brush.setColor(prevColor);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            w = Arrays.copyOf(w, capacity);
+            h = Arrays.copyOf(h, capacity);
+            argb = Arrays.copyOf(argb, capacity);
+            hits = Arrays.copyOf(hits, capacity);
+        }
+    }
+
+    private void buildIndex() {
+        double[] maxX = new double[size];
+        double[] maxY = new double[size];
+        double cellWidth = 1, cellHeight = 1;
+        for (int i = 0; i < size; i++) {
+            maxX[i] = x[i] + w[i];
+            maxY[i] = y[i] + h[i];
+            cellWidth = Math.max(cellWidth, w[i]);
+            cellHeight = Math.max(cellHeight, h[i]);
+        }
+        index = new SpatialGrid(x, y, maxX, maxY, live, size,
+                cellWidth, cellHeight);
+    }
+}
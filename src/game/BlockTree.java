@@ -0,0 +1,298 @@
+package game;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Bounding-volume hierarchy over axis-aligned boxes identified by int ids.
+ * Boxes are grouped into bands of boxes sharing a row, each band is cut into
+ * leaves of a few boxes side by side, and every band and leaf keeps the
+ * bounds of the boxes in it that are still standing. Bounds shrink as boxes
+ * are removed, so a query skips a band or leaf as a whole once it is out of
+ * reach or empty, and a level near its end costs only what is left of it.
+ * Unlike a uniform grid it needs no cell size, so it suits levels of mixed
+ * block sizes as well as grids.
+ *
+ * Queries write into caller-owned {@link QueryResults}, so any number
+ * of threads can query at once as long as nobody removes ids.
+ */
+class BlockTree {
+    /** Most boxes in a leaf. */
+    static final int LEAF_SIZE = 4;
+
+    private final double[] minX, minY, maxX, maxY; // the boxes, by id
+    private final BitSet standing = new BitSet();
+
+    private final int[] order;      // ids by band, then left to right
+    private final int[] leafOf;     // leaf of each id
+    private final int[] leafStart;  // first slot of each leaf in order
+    private final int[] bandStart;  // first leaf of each band
+    private final int[] bandOf;     // band of each leaf
+    private final double[] bandTop; // top of each band as built, ascending
+
+    // Bounds of what is standing; empty nodes have min > max
+    private final double[] leafMinX, leafMinY, leafMaxX, leafMaxY;
+    private final double[] bandMinX, bandMinY, bandMaxX, bandMaxY;
+
+    /**
+     * Builds a tree over the given boxes. Box i is stored under id i; boxes
+     * whose bit in live is clear are left out until {@link #restore}d.
+     * The arrays are kept, and must not change while the tree is in use.
+     *
+     * @param minX The left edge of each box
+     * @param minY The top edge of each box
+     * @param maxX The right edge of each box
+     * @param maxY The bottom edge of each box
+     * @param live Which boxes are standing
+     * @param count The number of boxes
+     */
+    BlockTree(double[] minX, double[] minY, double[] maxX, double[] maxY,
+            BitSet live, int count) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        standing.or(live);
+        standing.clear(count, Math.max(count, standing.length()));
+
+        // Sort by top, then id. Tops are ranked so that each sort key packs
+        // into a long; leafOf holds the ranks until the leaves are cut.
+        order = new int[count];
+        leafOf = new int[count];
+        long[] keys = new long[count];
+        rank(minY, count, keys, leafOf);
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long)leafOf[i] << 32 | i;
+        }
+        Arrays.sort(keys);
+        for (int k = 0; k < count; k++) {
+            order[k] = (int)keys[k];
+        }
+
+        // A band runs while boxes start above the bottom of its first box
+        int bandCount = 0;
+        double bandBottom = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < count; k++) {
+            if (minY[order[k]] >= bandBottom) {
+                bandCount++;
+                bandBottom = maxY[order[k]];
+            }
+        }
+        int[] bands = new int[bandCount + 1];
+        bandTop = new double[bandCount];
+        bandCount = 0;
+        bandBottom = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < count; k++) {
+            if (minY[order[k]] >= bandBottom) {
+                bandTop[bandCount] = minY[order[k]];
+                bands[bandCount++] = k;
+                bandBottom = maxY[order[k]];
+            }
+        }
+        bands[bandCount] = count;
+
+        // Then each band left to right, cut into leaves
+        rank(minX, count, keys, leafOf);
+        int leafCount = 0;
+        for (int b = 0; b < bandCount; b++) {
+            for (int k = bands[b]; k < bands[b + 1]; k++) {
+                keys[k] = (long)leafOf[order[k]] << 32 | order[k];
+            }
+            Arrays.sort(keys, bands[b], bands[b + 1]);
+            for (int k = bands[b]; k < bands[b + 1]; k++) {
+                order[k] = (int)keys[k];
+            }
+            leafCount += (bands[b + 1] - bands[b] + LEAF_SIZE - 1) / LEAF_SIZE;
+        }
+
+        leafStart = new int[leafCount + 1];
+        bandStart = new int[bandCount + 1];
+        bandOf = new int[leafCount];
+        int leaf = 0;
+        for (int b = 0; b < bandCount; b++) {
+            bandStart[b] = leaf;
+            for (int k = bands[b]; k < bands[b + 1]; k += LEAF_SIZE) {
+                leafStart[leaf] = k;
+                bandOf[leaf] = b;
+                for (int j = k; j < Math.min(k + LEAF_SIZE, bands[b + 1]); j++) {
+                    leafOf[order[j]] = leaf;
+                }
+                leaf++;
+            }
+        }
+        bandStart[bandCount] = leafCount;
+        leafStart[leafCount] = count;
+
+        leafMinX = new double[leafCount];
+        leafMinY = new double[leafCount];
+        leafMaxX = new double[leafCount];
+        leafMaxY = new double[leafCount];
+        bandMinX = new double[bandCount];
+        bandMinY = new double[bandCount];
+        bandMaxX = new double[bandCount];
+        bandMaxY = new double[bandCount];
+        for (int l = 0; l < leafCount; l++) {
+            fitLeaf(l);
+        }
+        for (int b = 0; b < bandCount; b++) {
+            fitBand(b);
+        }
+    }
+
+    /**
+     * Removes an id, shrinking the bounds of its leaf and band to what is
+     * left standing in them.
+     *
+     * @param id The id to remove
+     */
+    void remove(int id) {
+        if (!standing.get(id)) {
+            return;
+        }
+        standing.clear(id);
+        int leaf = leafOf[id];
+        // Only a box on the leaf's edge can move its bounds
+        if (minX[id] > leafMinX[leaf] && minY[id] > leafMinY[leaf]
+                && maxX[id] < leafMaxX[leaf] && maxY[id] < leafMaxY[leaf]) {
+            return;
+        }
+        fitLeaf(leaf);
+        fitBand(bandOf[leaf]);
+    }
+
+    /**
+     * Puts back an id, growing the bounds of its leaf and band to hold it.
+     *
+     * @param id The id to put back
+     */
+    void restore(int id) {
+        if (standing.get(id)) {
+            return;
+        }
+        standing.set(id);
+        int leaf = leafOf[id];
+        int band = bandOf[leaf];
+        leafMinX[leaf] = Math.min(leafMinX[leaf], minX[id]);
+        leafMinY[leaf] = Math.min(leafMinY[leaf], minY[id]);
+        leafMaxX[leaf] = Math.max(leafMaxX[leaf], maxX[id]);
+        leafMaxY[leaf] = Math.max(leafMaxY[leaf], maxY[id]);
+        bandMinX[band] = Math.min(bandMinX[band], minX[id]);
+        bandMinY[band] = Math.min(bandMinY[band], minY[id]);
+        bandMaxX[band] = Math.max(bandMaxX[band], maxX[id]);
+        bandMaxY[band] = Math.max(bandMaxY[band], maxY[id]);
+    }
+
+    /**
+     * Collects the ids of every standing box overlapping the query box.
+     * Each id is reported once, in ascending order.
+     *
+     * @param minX The left edge of the query box
+     * @param minY The top edge of the query box
+     * @param maxX The right edge of the query box
+     * @param maxY The bottom edge of the query box
+     * @param out Receives the ids found, replacing its previous contents
+     * @return The number of ids found
+     */
+    int query(double minX, double minY, double maxX, double maxY,
+            QueryResults out) {
+        out.clear();
+        for (int b = 0; b < bandTop.length; b++) {
+            // Bands were built top down, and bounds only shrink
+            if (bandTop[b] > maxY) {
+                break;
+            }
+            if (bandMinX[b] > maxX || bandMaxX[b] < minX
+                    || bandMinY[b] > maxY || bandMaxY[b] < minY) {
+                continue;
+            }
+            for (int l = bandStart[b]; l < bandStart[b + 1]; l++) {
+                if (leafMinX[l] > maxX || leafMaxX[l] < minX
+                        || leafMinY[l] > maxY || leafMaxY[l] < minY) {
+                    continue;
+                }
+                for (int k = leafStart[l]; k < leafStart[l + 1]; k++) {
+                    int id = order[k];
+                    if (standing.get(id) && this.minX[id] <= maxX
+                            && this.maxX[id] >= minX && this.minY[id] <= maxY
+                            && this.maxY[id] >= minY) {
+                        out.append(id);
+                    }
+                }
+            }
+        }
+        // Leaves hold each id once, so ids are only put in order at the end
+        out.sort();
+        return out.size();
+    }
+
+    // Gives each box an int that orders its value as Double.compare does:
+    // the value's own bits when every value is exactly a float, as level
+    // coordinates are, or else its rank among the distinct values, found by
+    // sorting the values' bits in keys.
+    private static void rank(double[] values, int count, long[] keys,
+            int[] ranks) {
+        boolean floats = true;
+        for (int i = 0; i < count && floats; i++) {
+            floats = (float)values[i] == values[i];
+        }
+        if (floats) {
+            for (int i = 0; i < count; i++) {
+                int bits = Float.floatToIntBits((float)values[i]);
+                ranks[i] = bits ^ ((bits >> 31) & Integer.MAX_VALUE);
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            keys[i] = sortable(values[i]);
+        }
+        Arrays.sort(keys, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || keys[i] != keys[distinct - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            ranks[i] = Arrays.binarySearch(keys, 0, distinct, sortable(values[i]));
+        }
+    }
+
+    // Maps a double to a long that sorts the same way Double.compare does.
+    private static long sortable(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private void fitLeaf(int leaf) {
+        double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+        for (int k = leafStart[leaf]; k < leafStart[leaf + 1]; k++) {
+            int id = order[k];
+            if (standing.get(id)) {
+                left = Math.min(left, minX[id]);
+                top = Math.min(top, minY[id]);
+                right = Math.max(right, maxX[id]);
+                bottom = Math.max(bottom, maxY[id]);
+            }
+        }
+        leafMinX[leaf] = left;
+        leafMinY[leaf] = top;
+        leafMaxX[leaf] = right;
+        leafMaxY[leaf] = bottom;
+    }
+
+    private void fitBand(int band) {
+        double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+        for (int l = bandStart[band]; l < bandStart[band + 1]; l++) {
+            left = Math.min(left, leafMinX[l]);
+            top = Math.min(top, leafMinY[l]);
+            right = Math.max(right, leafMaxX[l]);
+            bottom = Math.max(bottom, leafMaxY[l]);
+        }
+        bandMinX[band] = left;
+        bandMinY[band] = top;
+        bandMaxX[band] = right;
+        bandMaxY[band] = bottom;
+    }
+}
@@ -2,147 +2,92 @@ package game;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * The main game class for the Breakout game.
- * Handles game initialization, rendering, and game logic.
+ * Renders a {@link Simulation} in a window and feeds it keyboard input.
+ * Keys are handed to the simulation through an {@link InputQueue}, so the
+ * event thread never touches the game state the render loop is using.
+ * The last half minute of play is kept in a {@link SnapshotRing}; holding
+ * backspace winds the game back through it.
  * Implements KeyListener to handle user input.
  */
 @SuppressWarnings("serial")
 class BreakoutGame extends Game implements KeyListener {
 
-    private Ball ball;
-    private BlockManager blockManager;
-    private Paddle paddle;
-    
-    private boolean gameStarted = false;
-    private int score = 0;
-    private int lives = 3;
-    
-    private int ballSpeedX = 3;
-    private int ballSpeedY = -3;
+    private Simulation simulation;
+    private InputQueue inputs = new InputQueue(256);
+    private Metrics metrics = new Metrics();
+    private FrameRenderer renderer;
+    private SnapshotRing history;
+    private volatile boolean rewinding = false;
+    private long lastFrameTime = 0;
+    private long rewindNanos = 0;
     
     /**
      * Creates a new Breakout game.
      * Initializes the game components, including the ball, paddle, and blocks.
      */
     public BreakoutGame() {
-        super("Breakout Game", 800, 600);
-        this.setFocusable(true);
-     	this.requestFocus();
-        
-        ball = new Ball(10, 400, 500);
-        paddle = new Paddle(100, 10, 350, 550, 5);
-        
-        blockManager = new BlockManager();
-        Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, 
-        		Color.BLUE};
-        blockManager.createBlockGrid(5, 11, 60, 20, 20, 50, 10, colors);
-        this.addKeyListener(this);
+        this(new GameConfig());
     }
     
     /**
-     * Renders the game on the screen.
-     * Draws the blocks, paddle, ball, and game status information.
-     * Handles GUI updates.
+     * Creates a new Breakout game with the given constants, such as a level
+     * to play.
      *
-     * @param brush The graphics context to paint on
+     * @param config The game's constants
      */
-    public void paint(Graphics brush) {
-        brush.setColor(Color.BLACK);
-        brush.fillRect(0, 0, width, height);
-        
-        blockManager.paint(brush);
-        paddle.paint(brush);
-        
-        ball.paint(brush);
-        
-        brush.setColor(Color.WHITE);
-        brush.drawString("Score: " + score, 20, 20);
-        brush.drawString("Lives: " + lives, width - 80, 20);
-        
-        if (!gameStarted) {
-        	if (lives > 0) {
-        		brush.drawString("Press SPACE to start", 350, 300);
-        	}
-        } else {
-            updateGame();
-        }
+    public BreakoutGame(GameConfig config) {
+        super("Breakout Game", config.width, config.height);
+        this.setFocusable(true);
+     	this.requestFocus();
         
-        if (lives <= 0) {
-            brush.drawString("GAME OVER", 350, 300);
-            brush.drawString("Press R to restart", 350, 320);
-        } else if (blockManager.allBlocksDestroyed()) {
-            brush.drawString("YOU WIN!", 350, 300);
-            brush.drawString("Press R to restart", 350, 320);
-        }
+        simulation = new Simulation(config);
+        simulation.setPaddleController(inputs);
+        simulation.setMetrics(metrics);
+        history = new SnapshotRing((int)(30_000_000_000L / Simulation.TICK_NANOS));
+        simulation.addTickListener(history);
+        renderer = new FrameRenderer(width, height);
+        this.addKeyListener(this);
     }
     
     /**
-     * Updates the game state.
-     * Handles ball movement, collisions, and game logic.
+     * Renders the next frame of the game.
+     * Advances the simulation by the time elapsed since the last frame, or
+     * winds it back as far while rewinding, then repaints the parts of the
+     * frame that changed: the paddle, the balls, the game status
+     * information and any destroyed blocks.
+     *
+     * @param brush The graphics context to paint on
      */
-    private void updateGame() {
-        if (lives <= 0 || blockManager.allBlocksDestroyed()) {
-            return;
-        }
-        
-        // Update paddle position
-        paddle.update(width);
-        
-        ball.moveBall(ballSpeedX, ballSpeedY);
-        ball.rotateBall(1);
-        
-        // Handle wall collisions
-        if (ball.position.getX() - ball.getRadius() <= 0 || 
-        		ball.position.getX() + ball.getRadius() >= width) {
-            ballSpeedX = -ballSpeedX;
-        }
-        if (ball.position.getY() - ball.getRadius() <= 0) {
-            ballSpeedY = -ballSpeedY;
-        }
-        
-        // Handle paddle collision
-        if (paddle.checkCollision(ball)) {
-            ballSpeedY = -Math.abs(ballSpeedY); // Always go up after hitting paddle
-            ballSpeedX = paddle.calculateBallAngle(ball);
+    public void render(Graphics brush) {
+        long now = System.nanoTime();
+        if (lastFrameTime != 0 && rewinding && history != null) {
+            rewindNanos += now - lastFrameTime;
+            int ticks = (int)Math.min(rewindNanos / Simulation.TICK_NANOS,
+                    Simulation.MAX_TICKS_PER_ADVANCE);
+            rewindNanos -= ticks * Simulation.TICK_NANOS;
+            history.rewind(simulation, ticks);
+        } else if (lastFrameTime != 0) {
+            simulation.advance(now - lastFrameTime);
         }
+        lastFrameTime = now;
         
-        // Handle block collisions
-        int blockCollisions = blockManager.checkCollisions(ball);
-        if (blockCollisions == 1) {
-            ballSpeedX = -ballSpeedX;
-            score += 10;
-        } else if (blockCollisions == 2) {
-            ballSpeedY = Math.abs(ballSpeedY);
-            score += 10;
-        } else if (blockCollisions == 3){
-            ballSpeedY = -1 * Math.abs(ballSpeedY);
-            score += 10;
-        }
-        
-        // Handle ball falling off the bottom
-        if (ball.position.getY() > height) {
-            lives--;
-            resetBall();
-        }
+        renderer.paint(simulation, brush);
     }
     
-    /**
-     * Resets the ball to its initial position.
-     * Called when the player loses a life.
-     */
-    private void resetBall() {
-        ball = new Ball(10, 400, 500);
-        ballSpeedX = 3;
-        ballSpeedY = -3;
-        paddle.position = new Point(350, 550);
-        gameStarted = false;
+    @Override
+    protected void bufferLost() {
+        renderer.invalidate();
     }
     
     /**
      * Handles key press events.
-     * Controls paddle movement, game start, and game restart.
+     * Controls paddle movement, game start, and game restart. Backspace
+     * rewinds while held. F3 shows or hides the metrics overlay.
      *
      * @param e The key event
      */
@@ -150,19 +95,17 @@ class BreakoutGame extends Game implements KeyListener {
         int key = e.getKeyCode();
         
         if (key == KeyEvent.VK_LEFT) {
-            paddle.setMovingLeft(true);
+            inputs.offer(Input.LEFT_PRESSED);
         } else if (key == KeyEvent.VK_RIGHT) {
-            paddle.setMovingRight(true);
+            inputs.offer(Input.RIGHT_PRESSED);
         } else if (key == KeyEvent.VK_SPACE) {
-            gameStarted = true;
+            inputs.offer(Input.START);
         } else if (key == KeyEvent.VK_R) {
-            score = 0;
-            lives = 3;
-            resetBall();
-            paddle = new Paddle(100, 10, 350, 550, 5);
-            blockManager = new BlockManager();
-            Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.BLUE};
-            blockManager.createBlockGrid(5, 11, 60, 20, 20, 50, 10, colors);
+            inputs.offer(Input.RESTART);
+        } else if (key == KeyEvent.VK_BACK_SPACE) {
+            rewinding = true;
+        } else if (key == KeyEvent.VK_F3) {
+            renderer.setOverlay(!renderer.isOverlay());
         }
     }
     
@@ -176,21 +119,145 @@ class BreakoutGame extends Game implements KeyListener {
         int key = e.getKeyCode();
         
         if (key == KeyEvent.VK_LEFT) {
-            paddle.setMovingLeft(false);
+            inputs.offer(Input.LEFT_RELEASED);
         } else if (key == KeyEvent.VK_RIGHT) {
-            paddle.setMovingRight(false);
+            inputs.offer(Input.RIGHT_RELEASED);
+        } else if (key == KeyEvent.VK_BACK_SPACE) {
+            rewinding = false;
         }
     }
     
     /**
      * The main entry point for the game.
-     * Creates and starts the game.
+     * Creates and starts the game. By default frames are rendered actively
+     * at 60 frames per second. The options are:
+     * <ul>
+     * <li>--fps n: render actively at n frames per second</li>
+     * <li>--uncapped: render actively as fast as possible, printing the
+     *     frame rate and input latency every second</li>
+     * <li>--passive: use the repaint loop of {@link Game} instead</li>
+     * <li>--record path: save the session's inputs for {@link Replay};
+     *     rewinding is turned off, as a recording only holds inputs</li>
+     * <li>--level path: play the first level of a {@link LevelPack}</li>
+     * <li>--level-index n: play level n of the pack instead</li>
+     * <li>--endless: scroll blocks in forever, from the level if one is
+     *     given</li>
+     * <li>--autopilot: let an {@link Autopilot} play the paddle; the
+     *     other keys still work</li>
+     * <li>--power-ups n: give each destroyed block an n percent chance
+     *     of dropping a {@link PowerUp}</li>
+     * <li>--hit-points a,b,...: the hits each row of the grid takes,
+     *     cycled; 255 makes a row indestructible</li>
+     * <li>--metrics path: write frame and tick {@link Metrics} to a CSV
+     *     file every second</li>
+     * </ul>
      *
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments
+     * @throws IOException if the recording or metrics file cannot be created
      */
-    public static void main(String[] args) {
-        BreakoutGame game = new BreakoutGame();
-        game.repaint();
+    public static void main(String[] args) throws IOException {
+        int fps = 60;
+        boolean passive = false;
+        String record = null;
+        String metricsPath = null;
+        boolean autopilot = false;
+        GameConfig config = new GameConfig();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--fps") && i + 1 < args.length) {
+                fps = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--uncapped")) {
+                fps = 0;
+            } else if (args[i].equals("--passive")) {
+                passive = true;
+            } else if (args[i].equals("--record") && i + 1 < args.length) {
+                record = args[++i];
+            } else if (args[i].equals("--level") && i + 1 < args.length) {
+                config.level = args[++i];
+            } else if (args[i].equals("--level-index") && i + 1 < args.length) {
+                config.levelIndex = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--endless")) {
+                config.endless = true;
+            } else if (args[i].equals("--autopilot")) {
+                autopilot = true;
+            } else if (args[i].equals("--power-ups") && i + 1 < args.length) {
+                config.powerUpChance = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--hit-points") && i + 1 < args.length) {
+                String[] hits = args[++i].split(",");
+                config.hitPoints = new int[hits.length];
+                for (int h = 0; h < hits.length; h++) {
+                    config.hitPoints[h] = Integer.parseInt(hits[h].trim());
+                }
+            } else if (args[i].equals("--metrics") && i + 1 < args.length) {
+                metricsPath = args[++i];
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(2);
+            }
+        }
+        
+        BreakoutGame game = new BreakoutGame(config);
+        if (autopilot) {
+            PaddleController pilot = new Autopilot(0, 3);
+            game.simulation.setPaddleController(simulation -> {
+                game.inputs.drain(simulation);
+                pilot.update(simulation);
+            });
+        }
+        if (metricsPath != null) {
+            game.metrics.exportTo(Paths.get(metricsPath));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                game.stop();
+                try {
+                    game.metrics.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        if (record != null) {
+            game.simulation.removeTickListener(game.history);
+            game.history = null;
+            InputRecorder recorder = new InputRecorder(Paths.get(record),
+                    game.simulation, InputRecorder.DEFAULT_SEGMENT_BYTES);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                // The recorder hears inputs on the thread rendering; let it finish
+                game.stop();
+                try {
+                    recorder.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        
+        if (passive) {
+            game.repaint();
+        } else {
+            game.startActive(fps);
+            if (fps == 0) {
+                reportFrameRate(game);
+            }
+        }
+    }
+    
+    // Prints the frame rate and input latency once a second while the
+    // uncapped loop runs.
+    private static void reportFrameRate(BreakoutGame game) {
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.out.printf("%.1f fps, input latency %.2f ms mean, "
+                        + "%.2f ms max%n", game.getFrameRate(),
+                        game.inputs.getMeanLatency() / 1e6,
+                        game.inputs.getMaxLatency() / 1e6);
+            }
+        }, "frame-rate");
+        reporter.setDaemon(true);
+        reporter.start();
     }
 
     /**
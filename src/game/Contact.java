@@ -0,0 +1,239 @@
+package game;
+
+/**
+ * The earliest contact found while sweeping the ball along its move.
+ * A contact is reset before each sweep and then offered candidate boxes;
+ * it keeps only the one the ball reaches first, with the time of impact
+ * and the exact surface normal at that point.
+ */
+public class Contact {
+    private boolean hit;
+    private double time;
+    private double normalX, normalY;
+    private int block;
+    private int cell;
+    private int tests;
+
+    // Broad-phase scratch space, one per contact so sweeps never share it.
+    final QueryResults candidates = new QueryResults();
+
+    /**
+     * Creates an empty contact.
+     */
+    public Contact() {
+        reset();
+    }
+
+    /**
+     * Clears the contact before a new sweep.
+     */
+    public void reset() {
+        hit = false;
+        time = 1;
+        normalX = 0;
+        normalY = 0;
+        block = -1;
+        cell = -1;
+    }
+
+    /**
+     * Sweeps a circle along a straight move against an axis-aligned box and
+     * keeps the result if the circle reaches the box before any contact
+     * recorded so far. A circle already overlapping the box and moving into
+     * it touches at time 0.
+     *
+     * @param x The x-coordinate of the circle's center at the start
+     * @param y The y-coordinate of the circle's center at the start
+     * @param radius The radius of the circle
+     * @param dx The distance moved in the x direction
+     * @param dy The distance moved in the y direction
+     * @param minX The left edge of the box
+     * @param minY The top edge of the box
+     * @param maxX The right edge of the box
+     * @param maxY The bottom edge of the box
+     * @return true if this box is now the earliest contact, false otherwise
+     */
+    public boolean sweepCircle(double x, double y, double radius,
+            double dx, double dy, double minX, double minY,
+            double maxX, double maxY) {
+        tests++;
+
+        // Already overlapping: touch now, unless the circle is moving away.
+        double closestX = Math.max(minX, Math.min(x, maxX));
+        double closestY = Math.max(minY, Math.min(y, maxY));
+        double offX = x - closestX, offY = y - closestY;
+        double dist2 = offX * offX + offY * offY;
+        if (dist2 < radius * radius) {
+            double nx, ny;
+            if (dist2 > 0) {
+                double dist = Math.sqrt(dist2);
+                nx = offX / dist;
+                ny = offY / dist;
+            } else {
+                // Center inside the box: leave through the nearest face.
+                double left = x - minX, right = maxX - x;
+                double top = y - minY, bottom = maxY - y;
+                double least = Math.min(Math.min(left, right), Math.min(top, bottom));
+                nx = least == left ? -1 : least == right ? 1 : 0;
+                ny = nx != 0 ? 0 : least == top ? -1 : 1;
+            }
+            if (dx * nx + dy * ny >= 0) {
+                return false;
+            }
+            return record(0, nx, ny);
+        }
+
+        // Slab test against the box grown by the radius on every side.
+        double enter = 0, exit = 1;
+        double nx = 0, ny = 0;
+        if (dx == 0) {
+            if (x < minX - radius || x > maxX + radius) return false;
+        } else {
+            double t1 = (minX - radius - x) / dx;
+            double t2 = (maxX + radius - x) / dx;
+            if (Math.min(t1, t2) > enter) {
+                enter = Math.min(t1, t2);
+                nx = dx > 0 ? -1 : 1;
+            }
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (y < minY - radius || y > maxY + radius) return false;
+        } else {
+            double t1 = (minY - radius - y) / dy;
+            double t2 = (maxY + radius - y) / dy;
+            if (Math.min(t1, t2) > enter) {
+                enter = Math.min(t1, t2);
+                nx = 0;
+                ny = dy > 0 ? -1 : 1;
+            }
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        if (enter > exit) {
+            return false;
+        }
+
+        // Entering through a face: the flat part of the grown box.
+        double hitX = x + dx * enter, hitY = y + dy * enter;
+        if ((nx != 0 && hitY >= minY && hitY <= maxY) ||
+                (ny != 0 && hitX >= minX && hitX <= maxX)) {
+            return record(enter, nx, ny);
+        }
+
+        // Otherwise the circle can only meet the nearest corner.
+        double cornerX = hitX < minX ? minX : maxX;
+        double cornerY = hitY < minY ? minY : maxY;
+        double fx = x - cornerX, fy = y - cornerY;
+        double a = dx * dx + dy * dy;
+        double b = fx * dx + fy * dy;
+        double c = fx * fx + fy * fy - radius * radius;
+        double disc = b * b - a * c;
+        if (a == 0 || disc < 0) {
+            return false;
+        }
+        double t = (-b - Math.sqrt(disc)) / a;
+        if (t < 0 || t > 1) {
+            return false;
+        }
+        return record(t, (x + dx * t - cornerX) / radius,
+                (y + dy * t - cornerY) / radius);
+    }
+
+    private boolean record(double t, double nx, double ny) {
+        if (hit && t >= time) {
+            return false;
+        }
+        hit = true;
+        time = t;
+        normalX = nx;
+        normalY = ny;
+        block = -1;
+        cell = -1;
+        return true;
+    }
+
+    /**
+     * Checks if any contact was found.
+     *
+     * @return true if the sweep hit something, false otherwise
+     */
+    public boolean hasHit() {
+        return hit;
+    }
+
+    /**
+     * Gets the time of impact as a fraction of the move.
+     *
+     * @return The time of impact, from 0 to 1
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Gets the x component of the unit surface normal at the contact.
+     *
+     * @return The x component of the normal
+     */
+    public double getNormalX() {
+        return normalX;
+    }
+
+    /**
+     * Gets the y component of the unit surface normal at the contact.
+     *
+     * @return The y component of the normal
+     */
+    public double getNormalY() {
+        return normalY;
+    }
+
+    /**
+     * Gets the block that was hit, as numbered by the block container.
+     *
+     * @return The block's index, or -1 if the contact is not a block
+     */
+    public int getBlock() {
+        return block;
+    }
+
+    /**
+     * Gets the number of boxes offered to {@link #sweepCircle} since the
+     * last call, and starts counting again.
+     *
+     * @return The number of circle-versus-box tests
+     */
+    public int takeTestCount() {
+        int count = tests;
+        tests = 0;
+        return count;
+    }
+
+    /**
+     * Gets the endless field cell that was hit.
+     *
+     * @return The cell's index, or -1 if the contact is not a field block
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    /**
+     * Marks the current contact as a hit on a cell of an
+     * {@link EndlessField}.
+     *
+     * @param index The cell's index in the field
+     */
+    void setCell(int index) {
+        cell = index;
+    }
+
+    /**
+     * Marks the current contact as a hit on the given block.
+     *
+     * @param index The block's index in its container
+     */
+    void setBlock(int index) {
+        block = index;
+    }
+}
@@ -0,0 +1,484 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The block field of the endless mode: rows of blocks that scroll down the
+ * screen forever. Rows are numbered upwards from the first row on screen;
+ * new rows are made by a {@link RowSource} before they scroll into view,
+ * and rows that come down to the paddle are cleared, leaving the ball
+ * room to pass between them and the paddle.
+ *
+ * Rows are kept in a fixed ring of chunks of {@link #ROWS_PER_CHUNK} rows,
+ * sized to what fits between the top of the screen and the paddle. A chunk
+ * is filled as a whole and recycled as a whole once every row in it has
+ * been cleared, so the field's memory never grows. The rows
+ * form a regular grid, so finding the blocks near a ball is arithmetic
+ * and costs the same however long the game has run.
+ */
+public class EndlessField {
+    /** Number of rows made and dropped together. */
+    public static final int ROWS_PER_CHUNK = 8;
+
+    /**
+     * Hit points of a block no hit destroys, {@link BlockManager#INDESTRUCTIBLE}
+     * as a byte. Such a block only goes when its row is cleared.
+     */
+    public static final byte INDESTRUCTIBLE = (byte)BlockManager.INDESTRUCTIBLE;
+
+    /**
+     * Receives each hit on a block of the field.
+     */
+    public interface CellListener {
+        /**
+         * Called once a hit point has been taken from a block.
+         *
+         * @param cell The block's cell, as passed to {@link EndlessField#hit}
+         * @param destroyed true if that was the block's last hit point
+         */
+        void onCellHit(int cell, boolean destroyed);
+    }
+
+    /**
+     * Makes the blocks of each row.
+     */
+    public interface RowSource {
+        /**
+         * Fills in one row. Cells left with 0 hit points have no block, and
+         * cells given {@link EndlessField#INDESTRUCTIBLE} one that stays.
+         *
+         * @param row The row number, counting up from the first row
+         * @param argb Receives each block's color as 0xAARRGGBB
+         * @param hits Receives each block's hit points
+         * @param offset The index of the row's first cell in the arrays
+         * @param cols The number of cells in the row
+         */
+        void fillRow(long row, int[] argb, byte[] hits, int offset, int cols);
+    }
+
+    private final RowSource source;
+    private final ArrayList<CellListener> listeners = new ArrayList<CellListener>();
+    private final int cols;
+    private final int blockWidth, blockHeight;
+    private final double pitchX, pitchY;
+    private final double originX, originY;
+    private final double clearY;
+
+    // A ring of rows, whole chunks at a time: row r lives at r % ringRows
+    private final int ringRows;
+    private final int[] argb;
+    private final byte[] hits;
+    private final int startRows;
+
+    private long firstRow;  // the lowest row still kept
+    private long clearRow;  // the lowest row not yet cleared
+    private long nextRow;   // the row the next chunk starts with
+    private double scroll;
+    private int liveCount;
+
+    // The last block image drawn; rows are one color, so it rarely changes
+    private BufferedImage sprite;
+    private int spriteArgb, spriteWidth, spriteHeight;
+
+    /**
+     * Creates a field laid out like a config's block grid, filled by a
+     * procedural source.
+     *
+     * @param config The game's constants; rows sets how many rows start on
+     *        screen, paddleY and ballRadius where rows are cleared
+     */
+    public EndlessField(GameConfig config) {
+        this(config, generated(config.colors));
+    }
+
+    /**
+     * Creates a field laid out like a config's block grid.
+     *
+     * @param config The game's constants; rows sets how many rows start on
+     *        screen, paddleY and ballRadius where rows are cleared
+     * @param source Makes the rows
+     */
+    public EndlessField(GameConfig config, RowSource source) {
+        this.source = source;
+        this.cols = config.cols;
+        this.blockWidth = config.blockWidth;
+        this.blockHeight = config.blockHeight;
+        this.pitchX = config.blockWidth + config.padding;
+        this.pitchY = config.blockHeight + config.padding;
+        // A Polygon sits a quarter of its size up and left of its position.
+        this.originX = config.gridX - config.blockWidth / 4.0;
+        this.originY = config.gridY - config.blockHeight / 4.0;
+        this.clearY = config.paddleY - 2 * config.ballRadius;
+        this.startRows = Math.max(1, config.rows);
+
+        // Rows from a chunk above the screen down to the paddle, plus a
+        // chunk of slack on either end for filling and dropping
+        double chunkHeight = ROWS_PER_CHUNK * pitchY;
+        int chunks = (int)Math.ceil((clearY + chunkHeight) / chunkHeight) + 2;
+        chunks = Math.max(chunks, (startRows + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK + 2);
+        ringRows = chunks * ROWS_PER_CHUNK;
+        argb = new int[ringRows * cols];
+        hits = new byte[ringRows * cols];
+        reset();
+    }
+
+    /**
+     * Makes a source of rows with random gaps, each row one color, going
+     * through the given colors. Every run makes the same rows.
+     *
+     * @param colors The row colors
+     * @return The source
+     */
+    public static RowSource generated(Color[] colors) {
+        int[] rgb = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            rgb[i] = colors[i].getRGB();
+        }
+        return (row, argb, hits, offset, cols) -> {
+            int color = rgb[(int)(row % rgb.length)];
+            for (int col = 0; col < cols; col++) {
+                long mix = (row * 0x9E3779B97F4A7C15L) ^ (col * 0xC2B2AE3D27D4EB4FL);
+                mix ^= mix >>> 29;
+                mix *= 0xBF58476D1CE4E5B9L;
+                mix ^= mix >>> 32;
+                // About one cell in five is empty; one block in eight is tough
+                int roll = (int)(mix & 0xFF);
+                argb[offset + col] = color;
+                hits[offset + col] = (byte)(roll < 52 ? 0 : roll < 84 ? 2 : 1);
+            }
+        };
+    }
+
+    /**
+     * Makes a source that repeats the rows of a level, bottom row first.
+     * Each block is placed in the grid cell nearest its top-left corner.
+     * Indestructible blocks stay indestructible; others are held to at
+     * most {@link Byte#MAX_VALUE} hit points.
+     *
+     * @param level The level's bytes, as from {@link LevelPack#level(int)}
+     * @param config The grid layout the field will use
+     * @return The source
+     */
+    public static RowSource fromLevel(ByteBuffer level, GameConfig config) {
+        Level blocks = new Level();
+        LevelPack.read(level, blocks);
+        double pitchX = config.blockWidth + config.padding;
+        double pitchY = config.blockHeight + config.padding;
+        double left = config.gridX - config.blockWidth / 4.0;
+
+        int top = Integer.MAX_VALUE, bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < blocks.size(); i++) {
+            top = Math.min(top, blocks.getTop(i));
+            bottom = Math.max(bottom, blocks.getTop(i));
+        }
+        int rows = blocks.size() == 0 ? 1 : (int)((bottom - top) / pitchY) + 1;
+        int cols = config.cols;
+        int[] rowArgb = new int[rows * cols];
+        byte[] rowHits = new byte[rows * cols];
+        for (int i = 0; i < blocks.size(); i++) {
+            int row = rows - 1 - (int)((blocks.getTop(i) - top) / pitchY);
+            int col = (int)Math.floor((blocks.getLeft(i) - left) / pitchX + 0.5);
+            if (col >= 0 && col < cols) {
+                rowArgb[row * cols + col] = blocks.getColor(i);
+                int hitPoints = blocks.getHitPoints(i);
+                rowHits[row * cols + col] = hitPoints == BlockManager.INDESTRUCTIBLE
+                        ? INDESTRUCTIBLE
+                        : (byte)Math.max(1, Math.min(Byte.MAX_VALUE, hitPoints));
+            }
+        }
+        return (row, argb, hits, offset, count) -> {
+            int from = (int)(row % rows) * cols;
+            System.arraycopy(rowArgb, from, argb, offset, Math.min(cols, count));
+            System.arraycopy(rowHits, from, hits, offset, Math.min(cols, count));
+        };
+    }
+
+    /**
+     * Starts the field over: the first rows back on screen as at the start,
+     * made afresh by the source.
+     */
+    public void reset() {
+        firstRow = 0;
+        clearRow = 0;
+        nextRow = 0;
+        liveCount = 0;
+        scroll = (startRows - 1) * pitchY;
+        Arrays.fill(hits, (byte)0);
+        fill();
+    }
+
+    /**
+     * Scrolls the field down, clearing the rows that have come down to the
+     * paddle and making the chunks about to come into view.
+     *
+     * @param distance How far to scroll, in pixels
+     */
+    public void scroll(double distance) {
+        scroll += distance;
+
+        // A row is cleared once its bottom is within a ball's width of the
+        // paddle, so the ball can never be caught between the two
+        while (clearRow < nextRow && rowTop(clearRow) + blockHeight > clearY) {
+            int offset = slot(clearRow);
+            for (int col = 0; col < cols; col++) {
+                if (hits[offset + col] > 0) {
+                    liveCount--;
+                }
+                hits[offset + col] = 0;
+            }
+            clearRow++;
+        }
+        // and a chunk is given back once all its rows are
+        while (firstRow + ROWS_PER_CHUNK <= clearRow) {
+            firstRow += ROWS_PER_CHUNK;
+        }
+        fill();
+    }
+
+    // Makes chunks until the ring is full or a whole chunk waits above the
+    // top of the screen.
+    private void fill() {
+        while (nextRow - firstRow + ROWS_PER_CHUNK <= ringRows
+                && rowTop(nextRow) > -ROWS_PER_CHUNK * pitchY) {
+            for (long row = nextRow; row < nextRow + ROWS_PER_CHUNK; row++) {
+                int offset = slot(row);
+                source.fillRow(row, argb, hits, offset, cols);
+                for (int col = 0; col < cols; col++) {
+                    if (hits[offset + col] > 0) {
+                        liveCount++;
+                    }
+                }
+            }
+            nextRow += ROWS_PER_CHUNK;
+        }
+    }
+
+    private int slot(long row) {
+        return (int)(row % ringRows) * cols;
+    }
+
+    private double rowTop(long row) {
+        return originY + scroll - row * pitchY;
+    }
+
+    /**
+     * Finds the first block the ball would touch on its move, if it comes
+     * before the contact's current one. Only the grid cells the move passes
+     * over are tested.
+     *
+     * @param ball The ball at the start of the move
+     * @param dx The distance the ball moves in the x direction
+     * @param dy The distance the ball moves in the y direction
+     * @param contact Receives the cell if it is hit before any earlier contact
+     * @return true if a block became the earliest contact, false otherwise
+     */
+    public boolean sweep(Ball ball, double dx, double dy, Contact contact) {
+        return sweep(ball.getX(), ball.getY(), ball.getRadius(), dx, dy, contact);
+    }
+
+    /**
+     * Finds the first block a circle would touch on a move, as
+     * {@link #sweep(Ball, double, double, Contact)} does for a ball.
+     *
+     * @param x The x-coordinate of the circle's center at the start
+     * @param y The y-coordinate of the circle's center at the start
+     * @param radius The radius of the circle
+     * @param dx The distance the circle moves in the x direction
+     * @param dy The distance the circle moves in the y direction
+     * @param contact Receives the cell if it is hit before any earlier contact
+     * @return true if a block became the earliest contact, false otherwise
+     */
+    public boolean sweep(double x, double y, double radius, double dx,
+            double dy, Contact contact) {
+        double minX = Math.min(x, x + dx) - radius, maxX = Math.max(x, x + dx) + radius;
+        double minY = Math.min(y, y + dy) - radius, maxY = Math.max(y, y + dy) + radius;
+
+        double base = originY + scroll;
+        long rowLow = Math.max(clearRow, (long)Math.ceil((base - maxY) / pitchY));
+        long rowHigh = Math.min(nextRow - 1,
+                (long)Math.floor((base + blockHeight - minY) / pitchY));
+        int colLow = Math.max(0, (int)Math.ceil((minX - originX - blockWidth) / pitchX));
+        int colHigh = Math.min(cols - 1, (int)Math.floor((maxX - originX) / pitchX));
+
+        boolean hit = false;
+        for (long row = rowLow; row <= rowHigh; row++) {
+            int offset = slot(row);
+            double top = rowTop(row);
+            for (int col = colLow; col <= colHigh; col++) {
+                double left = originX + col * pitchX;
+                if (hits[offset + col] != 0 && contact.sweepCircle(x, y, radius,
+                        dx, dy, left, top, left + blockWidth, top + blockHeight)) {
+                    contact.setCell(offset + col);
+                    hit = true;
+                }
+            }
+        }
+        return hit;
+    }
+
+    /**
+     * Checks if a cell found by {@link #sweep} still holds a block.
+     *
+     * @param cell The cell
+     * @return true if the block is still there, false otherwise
+     */
+    public boolean isLive(int cell) {
+        return hits[cell] != 0;
+    }
+
+    /**
+     * Checks if the block in a cell can never be destroyed.
+     *
+     * @param cell The cell
+     * @return true if hits leave the block standing, false otherwise
+     */
+    public boolean isIndestructible(int cell) {
+        return hits[cell] == INDESTRUCTIBLE;
+    }
+
+    /**
+     * Takes a hit point from the block in a cell, destroying it with the
+     * last one. Indestructible blocks take no hits.
+     *
+     * @param cell The cell, as found by {@link #sweep}
+     * @return true if the block was destroyed, false otherwise
+     */
+    public boolean hit(int cell) {
+        if (hits[cell] <= 0) {
+            return false;
+        }
+        boolean destroyed = --hits[cell] == 0;
+        if (destroyed) {
+            liveCount--;
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onCellHit(cell, destroyed);
+        }
+        return destroyed;
+    }
+
+    /**
+     * Registers a listener to be told of every hit on a block.
+     *
+     * @param listener The listener to add
+     */
+    public void addCellListener(CellListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener registered with {@link #addCellListener}.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeCellListener(CellListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Counts the blocks currently kept, on screen or about to be, not
+     * counting indestructible ones.
+     *
+     * @return The number of blocks
+     */
+    public int getRemainingBlockCount() {
+        return liveCount;
+    }
+
+    /**
+     * Gets how far the field has scrolled since it started.
+     *
+     * @return The distance in pixels
+     */
+    public double getScroll() {
+        return scroll - (startRows - 1) * pitchY;
+    }
+
+    /**
+     * Gets the most bytes {@link #writeState} can write.
+     *
+     * @return The size in bytes
+     */
+    public int getStateSize() {
+        return 3 * 8 + 8 + 4 + ringRows * cols;
+    }
+
+    /**
+     * Writes where the field has scrolled to and the hit points of every
+     * block not yet cleared. Colors are not written; the source makes them
+     * again on {@link #readState}.
+     *
+     * @param out The buffer to write to
+     */
+    public void writeState(ByteBuffer out) {
+        out.putLong(firstRow).putLong(clearRow).putLong(nextRow);
+        out.putDouble(scroll).putInt(liveCount);
+        for (long row = clearRow; row < nextRow; row++) {
+            out.put(hits, slot(row), cols);
+        }
+    }
+
+    /**
+     * Puts the field back in a state written by {@link #writeState}.
+     *
+     * @param in The buffer to read from
+     * @throws IllegalArgumentException if the state does not fit the ring
+     */
+    public void readState(ByteBuffer in) {
+        long first = in.getLong(), clear = in.getLong(), next = in.getLong();
+        if (first < 0 || first > clear || clear > next
+                || next - first > ringRows) {
+            throw new IllegalArgumentException("Rows " + first + " to " + next
+                    + " do not fit the field");
+        }
+        firstRow = first;
+        clearRow = clear;
+        nextRow = next;
+        scroll = in.getDouble();
+        liveCount = in.getInt();
+        Arrays.fill(hits, (byte)0);
+        for (long row = clearRow; row < nextRow; row++) {
+            source.fillRow(row, argb, hits, slot(row), cols);
+            in.get(hits, slot(row), cols);
+        }
+    }
+
+    /**
+     * Renders the blocks that are on screen.
+     * Blocks of the same size and color share one pre-rendered image.
+     *
+     * @param brush The graphics context to paint on
+     * @param height The height of the screen
+     */
+    public void paint(Graphics brush, int height) {
+        for (long row = clearRow; row < nextRow; row++) {
+            double top = rowTop(row);
+            if (top > height || top + blockHeight < 0) {
+                continue;
+            }
+            int offset = slot(row);
+            int y = (int)Math.round(top);
+            int h = (int)Math.round(top + blockHeight) - y;
+            for (int col = 0; col < cols; col++) {
+                if (hits[offset + col] == 0) {
+                    continue;
+                }
+                double left = originX + col * pitchX;
+                int x = (int)Math.round(left);
+                int w = (int)Math.round(left + blockWidth) - x;
+                if (sprite == null || spriteArgb != argb[offset + col]
+                        || spriteWidth != w || spriteHeight != h) {
+                    spriteArgb = argb[offset + col];
+                    spriteWidth = w;
+                    spriteHeight = h;
+                    sprite = SpriteCache.box(w, h, spriteArgb, Color.BLACK);
+                }
+                brush.drawImage(sprite, x, y, null);
+            }
+        }
+    }
+}
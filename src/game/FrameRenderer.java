@@ -0,0 +1,273 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Draws a {@link Simulation} onto a back buffer that keeps its contents
+ * between frames, repainting only what changed since the last frame.
+ *
+ * The blocks live on a static layer that is drawn once per level and then
+ * only touched when a block is destroyed. Each frame copies the layer back
+ * over the old and new bounds of the paddle, the balls, the falling items
+ * and the HUD, and draws those on top, so the cost of a frame follows what
+ * moved rather than how many blocks the level has. The scrolling field of
+ * an endless game is drawn in full every frame instead.
+ */
+public class FrameRenderer implements BlockManager.BlockListener {
+    private static final int OVERLAY_X = 200, OVERLAY_Y = 6, OVERLAY_LINE = 14;
+
+    private final int width, height;
+    private final BufferedImage layer;
+    private final Graphics2D layerBrush;
+
+    private BlockManager blocks;
+    private boolean fullRepaint = true;
+    private boolean layerStale = false;
+    private volatile boolean overlay = false;
+
+    // Rectangles as x, y, width, height runs, grown as needed
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+    private int[] previous = new int[64];
+    private int previousCount;
+    private int[] current = new int[64];
+    private int currentCount;
+
+    private final Rectangle scratch = new Rectangle();
+
+    /**
+     * Creates a renderer for a playing field of the given size.
+     *
+     * @param width The width of the field in pixels
+     * @param height The height of the field in pixels
+     */
+    public FrameRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        layerBrush = layer.createGraphics();
+    }
+
+    /**
+     * Forces the next frame to be drawn in full, for when the back buffer
+     * has lost its contents.
+     */
+    public void invalidate() {
+        fullRepaint = true;
+    }
+
+    /**
+     * Shows or hides the metrics overlay beside the score. The overlay
+     * shows the last window of the simulation's {@link Metrics}, if it has
+     * any. May be called from any thread.
+     *
+     * @param shown true to show the overlay
+     */
+    public void setOverlay(boolean shown) {
+        overlay = shown;
+    }
+
+    /**
+     * Checks if the metrics overlay is shown.
+     *
+     * @return true if the overlay is shown
+     */
+    public boolean isOverlay() {
+        return overlay;
+    }
+
+    /**
+     * Brings the back buffer up to date with the simulation.
+     * The buffer must still hold the frame this renderer drew last.
+     *
+     * @param simulation The game to draw
+     * @param brush The graphics context of the back buffer
+     */
+    public void paint(Simulation simulation, Graphics brush) {
+        Metrics metrics = simulation.getMetrics();
+        long frameStart = metrics != null ? System.nanoTime() : 0;
+        boolean showOverlay = overlay && metrics != null;
+
+        BlockManager manager = simulation.getBlockManager();
+        if (manager != blocks || layerStale) {
+            // A new level: redraw the layer and follow the new blocks
+            if (manager != blocks) {
+                if (blocks != null) {
+                    blocks.removeBlockListener(this);
+                }
+                blocks = manager;
+                blocks.addBlockListener(this);
+            }
+            layerStale = false;
+            layerBrush.setColor(Color.BLACK);
+            layerBrush.fillRect(0, 0, width, height);
+            blocks.paint(layerBrush);
+            fullRepaint = true;
+        }
+
+        // Where things are now, and where they were last frame
+        currentCount = 0;
+        addCurrent(simulation.getPaddle().getPaintBounds(scratch));
+        for (Ball ball : simulation.getBalls()) {
+            addCurrent(ball.getPaintBounds(scratch));
+        }
+        ItemStore items = simulation.getItems();
+        for (int i = 0; i < items.size(); i++) {
+            addCurrent(items.getPaintBounds(i, scratch));
+        }
+        addHud(simulation, showOverlay);
+        for (int i = 0; i < previousCount; i += 4) {
+            addDirty(previous[i], previous[i + 1], previous[i + 2], previous[i + 3]);
+        }
+        for (int i = 0; i < currentCount; i += 4) {
+            addDirty(current[i], current[i + 1], current[i + 2], current[i + 3]);
+        }
+
+        EndlessField field = simulation.getEndlessField();
+        if (field != null) {
+            // Scrolling blocks move every tick, so nothing can be kept
+            brush.setColor(Color.BLACK);
+            brush.fillRect(0, 0, width, height);
+            field.paint(brush, height);
+        } else if (fullRepaint) {
+            brush.drawImage(layer, 0, 0, null);
+            fullRepaint = false;
+        } else {
+            for (int i = 0; i < dirtyCount; i += 4) {
+                int x = dirty[i], y = dirty[i + 1];
+                int x2 = x + dirty[i + 2], y2 = y + dirty[i + 3];
+                brush.drawImage(layer, x, y, x2, y2, x, y, x2, y2, null);
+            }
+        }
+        dirtyCount = 0;
+        long blocksEnd = metrics != null ? System.nanoTime() : 0;
+
+        simulation.getPaddle().paint(brush);
+        items.paint(brush);
+        long paddleEnd = metrics != null ? System.nanoTime() : 0;
+        for (Ball ball : simulation.getBalls()) {
+            ball.paint(brush);
+        }
+        long ballsEnd = metrics != null ? System.nanoTime() : 0;
+        paintHud(simulation, brush);
+        if (showOverlay) {
+            paintOverlay(metrics, brush);
+        }
+
+        int[] swap = previous;
+        previous = current;
+        previousCount = currentCount;
+        current = swap;
+
+        if (metrics != null) {
+            long end = System.nanoTime();
+            metrics.record(Metrics.Metric.BLOCKS, blocksEnd - frameStart);
+            metrics.record(Metrics.Metric.PADDLE, paddleEnd - blocksEnd);
+            metrics.record(Metrics.Metric.BALLS, ballsEnd - paddleEnd);
+            metrics.record(Metrics.Metric.HUD, end - ballsEnd);
+            metrics.record(Metrics.Metric.FRAME, end - frameStart);
+            metrics.poll(end);
+        }
+    }
+
+    @Override
+    public void onBlockDestroyed(BlockManager.Block block) {
+        block.getPaintBounds(scratch);
+        layerBrush.setColor(Color.BLACK);
+        layerBrush.fillRect(scratch.x, scratch.y, scratch.width, scratch.height);
+        addDirty(scratch.x, scratch.y, scratch.width, scratch.height);
+    }
+
+    @Override
+    public void onBlocksReset(BlockManager manager) {
+        layerStale = true;
+    }
+
+    private void paintHud(Simulation simulation, Graphics brush) {
+        brush.setColor(Color.WHITE);
+        brush.drawString("Score: " + simulation.getScore(), 20, 20);
+        brush.drawString("Lives: " + simulation.getLives(), width - 80, 20);
+
+        if (!simulation.isStarted() && !simulation.isGameOver()) {
+            brush.drawString("Press SPACE to start", 350, 300);
+        }
+
+        if (simulation.isGameOver()) {
+            brush.drawString("GAME OVER", 350, 300);
+            brush.drawString("Press R to restart", 350, 320);
+        } else if (simulation.isWon()) {
+            brush.drawString("YOU WIN!", 350, 300);
+            brush.drawString("Press R to restart", 350, 320);
+        }
+    }
+
+    // One line per metric: median, 99th percentile and maximum
+    private void paintOverlay(Metrics metrics, Graphics brush) {
+        brush.setColor(Color.WHITE);
+        int y = OVERLAY_Y;
+        for (Metrics.Metric metric : Metrics.Metric.values()) {
+            y += OVERLAY_LINE;
+            brush.drawString(metric.getLabel(), OVERLAY_X, y);
+            brush.drawString(format(metric, metrics.getP50(metric)) + " / "
+                    + format(metric, metrics.getP99(metric)) + " / "
+                    + format(metric, metrics.getMax(metric)),
+                    OVERLAY_X + 100, y);
+        }
+    }
+
+    private static String format(Metrics.Metric metric, long value) {
+        if (metric == Metrics.Metric.ALLOCATED
+                || metric == Metrics.Metric.COLLISION_TESTS) {
+            return Long.toString(value);
+        }
+        return String.format("%.1fus", value / 1000.0);
+    }
+
+    // The boxes paintHud can draw text into, with room for the font's
+    // ascent and descent around each baseline.
+    private void addHud(Simulation simulation, boolean showOverlay) {
+        addCurrent(20, 4, 160, 22);
+        addCurrent(width - 80, 4, 80, 22);
+        if (showOverlay) {
+            addCurrent(OVERLAY_X - 4, OVERLAY_Y, 360,
+                    (Metrics.Metric.values().length + 1) * OVERLAY_LINE);
+        }
+        if (!simulation.isStarted() || simulation.isGameOver()
+                || simulation.isWon()) {
+            addCurrent(350, 284, 200, 42);
+        }
+    }
+
+    private void addCurrent(Rectangle r) {
+        addCurrent(r.x, r.y, r.width, r.height);
+    }
+
+    private void addCurrent(int x, int y, int w, int h) {
+        if (currentCount + 4 > current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[currentCount++] = x;
+        current[currentCount++] = y;
+        current[currentCount++] = w;
+        current[currentCount++] = h;
+    }
+
+    private void addDirty(int x, int y, int w, int h) {
+        // Clip to the field; anything entirely off it needs no repaint
+        int x2 = Math.min(x + w, width), y2 = Math.min(y + h, height);
+        x = Math.max(x, 0);
+        y = Math.max(y, 0);
+        if (x >= x2 || y >= y2) {
+            return;
+        }
+        if (dirtyCount + 4 > dirty.length) {
+            dirty = Arrays.copyOf(dirty, dirty.length * 2);
+        }
+        dirty[dirtyCount++] = x;
+        dirty[dirtyCount++] = y;
+        dirty[dirtyCount++] = x2 - x;
+        dirty[dirtyCount++] = y2 - y;
+    }
+}
@@ -3,15 +3,22 @@ package game;
 /*
 CLASS: Game
 DESCRIPTION: A painted canvas in its own window, updated every tenth second.
+  Games can instead run actively: a loop thread of their own renders each
+  frame into a page-flipped BufferStrategy, paced to a target frame rate.
 USAGE: Extended by YourGameName.
 NOTE: You don't need to understand the details here, no fiddling neccessary.*/
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
 
 abstract class Game extends Canvas {
-  protected boolean on = true;
+  protected volatile boolean on = true;
   protected int width, height;
   protected Image buffer;
+  private Thread loop;
+  private final Object frameLock = new Object();
+  private volatile double frameRate;
   
 	public Game(String name, int inWidth, int inHeight) {
 	  width = inWidth;
@@ -30,16 +37,130 @@ abstract class Game extends Canvas {
     buffer = createImage(width, height);
 	}
   
-  // 'paint' will be called every tenth of a second that the game is on.
-	abstract public void paint(Graphics brush);
+  // 'render' will be called every tenth of a second that the game is on,
+  // to draw the next frame.
+	abstract public void render(Graphics brush);
   
-  // 'update' paints to a buffer then to the screen, then waits a tenth of
+  // 'bufferLost' is called when the image 'render' draws into no longer
+  // holds the frame drawn before, so games that only redraw what changed
+  // know to draw everything next time.
+  protected void bufferLost() {}
+  
+  // 'paint' is called by AWT when the window needs redrawing, and shows
+  // the last frame again.
+  public void paint(Graphics brush) {
+    brush.drawImage(buffer,0,0,this);
+  }
+  
+  // 'update' renders to a buffer then to the screen, then waits a tenth of
   // a second before repeating itself, assuming the game is on. This is done
   // to avoid a choppy painting experience if repainted in pieces.
   public void update(Graphics brush) {
-    paint(buffer.getGraphics());
+    synchronized (frameLock) {
+      if (on) {render(buffer.getGraphics());}
+    }
 		brush.drawImage(buffer,0,0,this);
-    if (on) {sleep(10); repaint();}
+    if (on && loop == null) {sleep(10); repaint();}
+  }
+  
+  // 'startActive' renders from a loop thread instead of repaint(), flipping
+  // pages of a BufferStrategy. Frames are paced to targetFps, or run as
+  // fast as possible if it is 0.
+  public void startActive(int targetFps) {
+    setIgnoreRepaint(true);
+    BufferStrategy strategy = createStrategy();
+    // Blitting and copied flips leave the last frame in the back buffer
+    BufferCapabilities caps = strategy.getCapabilities();
+    boolean retained = !caps.isPageFlipping() ||
+        caps.getFlipContents() == BufferCapabilities.FlipContents.COPIED;
+    long frameNanos = targetFps > 0 ? 1_000_000_000L / targetFps : 0;
+    
+    loop = new Thread(() -> {
+      long next = System.nanoTime();
+      long windowStart = next;
+      int frames = 0;
+      bufferLost();
+      while (on) {
+        boolean lost;
+        do {
+          boolean restored;
+          do {
+            Graphics brush = strategy.getDrawGraphics();
+            render(brush);
+            brush.dispose();
+            // A restored buffer lost what was drawn on it before
+            restored = strategy.contentsRestored();
+            if (restored) bufferLost();
+          } while (restored);
+          strategy.show();
+          lost = strategy.contentsLost();
+          if (lost) bufferLost();
+        } while (lost);
+        Toolkit.getDefaultToolkit().sync();
+        if (!retained) bufferLost();
+        
+        long now = System.nanoTime();
+        frames++;
+        if (now - windowStart >= 1_000_000_000L) {
+          frameRate = frames * 1e9 / (now - windowStart);
+          frames = 0;
+          windowStart = now;
+        }
+        if (frameNanos > 0) {next = pace(next + frameNanos, frameNanos);}
+      }
+    }, "game-loop");
+    loop.start();
+  }
+  
+  // 'stop' ends the active loop or the repaint loop and waits for its last
+  // frame to finish. A repainted frame renders on the event thread, which
+  // may itself be the one calling System.exit, so it is waited for by its
+  // lock rather than by queueing behind it.
+  public void stop() {
+    on = false;
+    if (loop != null) {
+      try {loop.join();} catch (InterruptedException e) {}
+    }
+    synchronized (frameLock) {}
+  }
+  
+  // 'getFrameRate' is the number of frames shown in the last second of the
+  // active loop.
+  public double getFrameRate() {
+    return frameRate;
+  }
+  
+  // Page flipping that keeps the back buffer's contents is asked for first,
+  // then any page flipping, then whatever the platform offers.
+  private BufferStrategy createStrategy() {
+    ImageCapabilities accelerated = new ImageCapabilities(true);
+    BufferCapabilities.FlipContents[] contents = {
+        BufferCapabilities.FlipContents.COPIED,
+        BufferCapabilities.FlipContents.UNDEFINED};
+    for (BufferCapabilities.FlipContents flip : contents) {
+      try {
+        createBufferStrategy(2, new BufferCapabilities(accelerated,
+            accelerated, flip));
+        return getBufferStrategy();
+      } catch (AWTException e) {}
+    }
+    createBufferStrategy(2);
+    return getBufferStrategy();
+  }
+  
+  // 'pace' waits for the deadline: it parks until shortly before, then spins
+  // the rest of the way, since parking can overshoot by a millisecond. If a
+  // frame ran so long that the next is already due, the schedule restarts
+  // from now instead of rushing out frames to catch up.
+  private long pace(long deadline, long frameNanos) {
+    long now = System.nanoTime();
+    if (now - deadline > frameNanos) {return now;}
+    while (deadline - now > 1_000_000) {
+      LockSupport.parkNanos(deadline - now - 1_000_000);
+      now = System.nanoTime();
+    }
+    while (deadline - System.nanoTime() > 0) {Thread.onSpinWait();}
+    return deadline;
   }
   
   // 'sleep' is a simple helper function used in 'update'.
@@ -0,0 +1,175 @@
+package game;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The tunable constants of a game: field size, paddle and ball sizes and
+ * speeds, lives, and the block grid layout. A fresh config holds the values
+ * of the classic game; tools change fields before creating a
+ * {@link Simulation} from it. The blocks are a grid unless a
+ * {@link LevelPack} file is named, in which case they come from one of its
+ * levels. In endless mode they scroll in from an {@link EndlessField}
+ * instead.
+ */
+public class GameConfig implements Cloneable {
+    public int width = 800, height = 600;
+    public int lives = 3;
+
+    public int paddleWidth = 100, paddleHeight = 10;
+    public int paddleX = 350, paddleY = 550;
+    public int paddleSpeed = 5;
+
+    public int ballRadius = 10;
+    public int ballX = 400, ballY = 500;
+    public double ballSpeedX = 3, ballSpeedY = -3;
+
+    public int rows = 5, cols = 11;
+    public int blockWidth = 60, blockHeight = 20;
+    public int gridX = 20, gridY = 50;
+    public int padding = 10;
+    public Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN,
+            Color.BLUE};
+    // Hits each grid row takes, cycled like the colors; see
+    // BlockManager.INDESTRUCTIBLE
+    public int[] hitPoints = {1};
+
+    // A level from a LevelPack file, used instead of the grid when set
+    public String level = null;
+    public int levelIndex = 0;
+
+    // Endless mode: the blocks scroll down by scrollSpeed pixels a tick,
+    // made from the level if one is set, or generated otherwise
+    public boolean endless = false;
+    public double scrollSpeed = 0.1;
+
+    // Power-ups: the percent chance a destroyed block drops one, how fast
+    // it falls, and how many ticks a timed one lasts
+    public int powerUpChance = 0;
+    public double itemSpeed = 2;
+    public int powerUpTicks = 1000;
+
+    /**
+     * Creates a config with the classic game's values.
+     */
+    public GameConfig() {
+    }
+
+    /**
+     * Creates a config with the classic game's values on a field of the
+     * given size.
+     *
+     * @param width The width of the playing field
+     * @param height The height of the playing field
+     */
+    public GameConfig(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Writes the config in a compact binary form. Fields added since the
+     * form was first used come last, so older configs still read.
+     *
+     * @param out The buffer to write to
+     */
+    public void write(ByteBuffer out) {
+        out.putInt(width).putInt(height).putInt(lives);
+        out.putInt(paddleWidth).putInt(paddleHeight);
+        out.putInt(paddleX).putInt(paddleY).putInt(paddleSpeed);
+        out.putInt(ballRadius).putInt(ballX).putInt(ballY);
+        out.putDouble(ballSpeedX).putDouble(ballSpeedY);
+        out.putInt(rows).putInt(cols).putInt(blockWidth).putInt(blockHeight);
+        out.putInt(gridX).putInt(gridY).putInt(padding);
+        out.putInt(colors.length);
+        for (Color color : colors) {
+            out.putInt(color.getRGB());
+        }
+        byte[] path = level == null ? null : level.getBytes(StandardCharsets.UTF_8);
+        out.putInt(path == null ? -1 : path.length);
+        if (path != null) {
+            out.put(path);
+        }
+        out.putInt(levelIndex);
+        out.put((byte)(endless ? 1 : 0)).putDouble(scrollSpeed);
+        out.putInt(hitPoints.length);
+        for (int hits : hitPoints) {
+            out.putInt(hits);
+        }
+        out.putInt(powerUpChance).putDouble(itemSpeed).putInt(powerUpTicks);
+    }
+
+    /**
+     * Reads a config written by {@link #write(ByteBuffer)}. A config
+     * written before the later fields existed ends early and gets their
+     * classic values.
+     *
+     * @param in The buffer to read from, holding the config and nothing
+     *        after it
+     * @return The config
+     */
+    public static GameConfig read(ByteBuffer in) {
+        GameConfig config = new GameConfig(in.getInt(), in.getInt());
+        config.lives = in.getInt();
+        config.paddleWidth = in.getInt();
+        config.paddleHeight = in.getInt();
+        config.paddleX = in.getInt();
+        config.paddleY = in.getInt();
+        config.paddleSpeed = in.getInt();
+        config.ballRadius = in.getInt();
+        config.ballX = in.getInt();
+        config.ballY = in.getInt();
+        config.ballSpeedX = in.getDouble();
+        config.ballSpeedY = in.getDouble();
+        config.rows = in.getInt();
+        config.cols = in.getInt();
+        config.blockWidth = in.getInt();
+        config.blockHeight = in.getInt();
+        config.gridX = in.getInt();
+        config.gridY = in.getInt();
+        config.padding = in.getInt();
+        config.colors = new Color[in.getInt()];
+        for (int i = 0; i < config.colors.length; i++) {
+            config.colors[i] = new Color(in.getInt(), true);
+        }
+        if (!in.hasRemaining()) {
+            return config;
+        }
+        int length = in.getInt();
+        if (length >= 0) {
+            byte[] path = new byte[length];
+            in.get(path);
+            config.level = new String(path, StandardCharsets.UTF_8);
+        }
+        config.levelIndex = in.getInt();
+        if (!in.hasRemaining()) {
+            return config;
+        }
+        config.endless = in.get() != 0;
+        config.scrollSpeed = in.getDouble();
+        if (!in.hasRemaining()) {
+            return config;
+        }
+        config.hitPoints = new int[in.getInt()];
+        for (int i = 0; i < config.hitPoints.length; i++) {
+            config.hitPoints[i] = in.getInt();
+        }
+        config.powerUpChance = in.getInt();
+        config.itemSpeed = in.getDouble();
+        config.powerUpTicks = in.getInt();
+        return config;
+    }
+
+    @Override
+    public GameConfig clone() {
+        try {
+            GameConfig copy = (GameConfig)super.clone();
+            copy.colors = colors.clone();
+            copy.hitPoints = hitPoints.clone();
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
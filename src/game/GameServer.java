@@ -0,0 +1,443 @@
+package game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hosts many headless games in one process. Sessions are spread over a few
+ * shard threads; each shard ticks all of its sessions back to back every
+ * {@link Simulation#TICK_NANOS}, so thousands of games share a handful of
+ * threads instead of needing one each.
+ *
+ * Players connect over TCP. One selector thread accepts connections and
+ * reads input, without blocking; the shard owning the session applies it
+ * on its next tick through the session's {@link InputQueue}, and writes
+ * the game state back to the socket, also without blocking. States go out
+ * as {@link StateEncoder} updates, a few bytes each; a client that cannot
+ * keep up gets fewer, larger updates rather than holding up its shard.
+ *
+ * The protocol, all numbers big-endian:
+ * <ul>
+ * <li>client to server: one byte per {@link Input}, its code</li>
+ * <li>server to client, once: the magic "BRKN", a byte giving the
+ *     version of the updates to follow, the session id, and the game's
+ *     {@link GameConfig} prefixed with its length</li>
+ * <li>server to client, every few ticks: an update written by a
+ *     {@link StateEncoder}, the first a key update, to be applied by a
+ *     {@link StateDecoder} made from the config and version</li>
+ * </ul>
+ *
+ * Sessions can also be started without a player, driven by an
+ * {@link Autopilot}, to load the server. Every report interval the server
+ * prints the session count, the time one session's tick takes, how busy
+ * the shards are and the heap used per session.
+ */
+public class GameServer {
+    /** "BRKN" */
+    static final int MAGIC = 0x42524B4E;
+    private static final int INPUT_COUNT = Input.values().length;
+
+    private final GameConfig config;
+    private final Shard[] shards;
+    private final int stateEvery;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private volatile boolean running = true;
+
+    /**
+     * A game and, if a player is connected, the player's socket.
+     */
+    static class Session {
+        final int id;
+        final Simulation simulation;
+        final InputQueue inputs;
+        final SocketChannel channel;
+        volatile boolean closed = false;
+        private StateEncoder encoder;
+        private ByteBuffer out;
+
+        Session(int id, GameConfig config, SocketChannel channel) {
+            this.id = id;
+            this.simulation = new Simulation(config);
+            this.channel = channel;
+            if (channel != null) {
+                inputs = new InputQueue(64);
+                simulation.setPaddleController(inputs);
+                encoder = new StateEncoder(simulation);
+                out = ByteBuffer.allocateDirect(4096);
+            } else {
+                inputs = null;
+                simulation.setPaddleController(new Autopilot((id * 37) % 61 - 30, 3));
+            }
+        }
+
+        /**
+         * Sends the session's greeting. Called once, before the session's
+         * first tick.
+         */
+        void greet() {
+            out.clear();
+            out.putInt(MAGIC).put(StateEncoder.VERSION).putInt(id);
+            int lengthAt = out.position();
+            out.putInt(0);
+            simulation.getConfig().write(out);
+            out.putInt(lengthAt, out.position() - lengthAt - 4);
+            out.flip();
+            flush();
+        }
+
+        /**
+         * Sends what changed since the last update, unless that update is
+         * still going out; the next one then covers both.
+         */
+        void sendState() {
+            if (!flush()) {
+                return;
+            }
+            int needed = encoder.getMaxUpdateSize();
+            if (out.capacity() < needed) {
+                out = ByteBuffer.allocateDirect(needed * 2);
+            }
+            out.clear();
+            encoder.encode(out);
+            out.flip();
+            flush();
+        }
+
+        // Writes what it can of the pending bytes; true once all are sent.
+        private boolean flush() {
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                close();
+            }
+            return !out.hasRemaining();
+        }
+
+        void close() {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * A thread ticking a share of the sessions. Sessions are handed over
+     * through a queue, so only the shard's own thread touches its list.
+     */
+    class Shard implements Runnable {
+        private final ArrayList<Session> sessions = new ArrayList<Session>();
+        private final ConcurrentLinkedQueue<Session> arrivals =
+                new ConcurrentLinkedQueue<Session>();
+        private final Histogram sessionTicks = new Histogram();
+        private long busyNanos, overruns, ticks;
+
+        // Copies of the last report window, read by the reporting thread
+        private volatile long reportedCount, reportedTotal, reportedP99,
+                reportedBusy, reportedOverruns, reportedTicks;
+        private volatile boolean reportWanted;
+
+        @Override
+        public void run() {
+            long next = System.nanoTime();
+            while (running) {
+                for (Session session = arrivals.poll(); session != null;
+                        session = arrivals.poll()) {
+                    sessions.add(session);
+                    if (session.channel != null) {
+                        session.greet();
+                    }
+                }
+
+                long start = System.nanoTime();
+                for (int i = sessions.size() - 1; i >= 0; i--) {
+                    Session session = sessions.get(i);
+                    if (session.closed) {
+                        sessions.set(i, sessions.get(sessions.size() - 1));
+                        sessions.remove(sessions.size() - 1);
+                        sessionCount.decrementAndGet();
+                        continue;
+                    }
+                    long before = System.nanoTime();
+                    tick(session);
+                    sessionTicks.record(System.nanoTime() - before);
+                }
+                long end = System.nanoTime();
+                busyNanos += end - start;
+                ticks++;
+                if (end - start > Simulation.TICK_NANOS) {
+                    overruns++;
+                }
+                if (reportWanted) {
+                    publishReport();
+                }
+
+                // Keep to the tick rate; a shard that falls behind starts
+                // its schedule over rather than rushing to catch up
+                next += Simulation.TICK_NANOS;
+                long now = System.nanoTime();
+                if (now - next > Simulation.TICK_NANOS) {
+                    next = now;
+                }
+                while (running && next - now > 0) {
+                    LockSupport.parkNanos(next - now);
+                    now = System.nanoTime();
+                }
+            }
+        }
+
+        private void tick(Session session) {
+            Simulation simulation = session.simulation;
+            if (session.channel == null && (simulation.isGameOver()
+                    || simulation.isWon())) {
+                simulation.restart();
+            }
+            simulation.tick();
+            if (session.channel != null
+                    && simulation.getTickCount() % stateEvery == 0) {
+                session.sendState();
+            }
+        }
+
+        private void publishReport() {
+            reportedCount = sessionTicks.getCount();
+            reportedTotal = Math.round(sessionTicks.getMean() * sessionTicks.getCount());
+            reportedP99 = sessionTicks.getValueAtPercentile(99);
+            reportedBusy = busyNanos;
+            reportedOverruns = overruns;
+            reportedTicks = ticks;
+            sessionTicks.reset();
+            busyNanos = 0;
+            overruns = 0;
+            ticks = 0;
+            reportWanted = false;
+        }
+    }
+
+    /**
+     * Creates a server. Nothing runs until {@link #start()}.
+     *
+     * @param config The constants every session's game is made with
+     * @param shardCount The number of shard threads
+     * @param stateEvery How many ticks apart states are sent to players
+     */
+    public GameServer(GameConfig config, int shardCount, int stateEvery) {
+        this.config = config.clone();
+        this.stateEvery = Math.max(1, stateEvery);
+        shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    /**
+     * Starts the shard threads.
+     */
+    public void start() {
+        for (int i = 0; i < shards.length; i++) {
+            Thread thread = new Thread(shards[i], "shard-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the shards after their current tick.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Adds a session. Sessions are dealt out to the shards in turn.
+     *
+     * @param channel The player's socket, or null for an autopilot session
+     * @return The session
+     */
+    Session addSession(SocketChannel channel) {
+        int id = nextId.getAndIncrement();
+        Session session = new Session(id, config, channel);
+        sessionCount.incrementAndGet();
+        shards[id % shards.length].arrivals.add(session);
+        return session;
+    }
+
+    /**
+     * Counts the sessions being played.
+     *
+     * @return The number of sessions
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * Accepts players and reads their input until the server is stopped.
+     * Runs on the calling thread.
+     *
+     * @param port The TCP port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public void serve(int port) throws IOException {
+        try (Selector selector = Selector.open();
+                ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            ByteBuffer in = ByteBuffer.allocateDirect(4096);
+
+            while (running) {
+                selector.select(100);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        SocketChannel channel = server.accept();
+                        if (channel != null) {
+                            channel.configureBlocking(false);
+                            channel.socket().setTcpNoDelay(true);
+                            channel.register(selector, SelectionKey.OP_READ,
+                                    addSession(channel));
+                        }
+                    } else if (key.isReadable()) {
+                        read(key, in);
+                    }
+                }
+            }
+        }
+    }
+
+    private void read(SelectionKey key, ByteBuffer in) {
+        Session session = (Session)key.attachment();
+        in.clear();
+        int count;
+        try {
+            count = session.channel.read(in);
+        } catch (IOException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            key.cancel();
+            session.close();
+            return;
+        }
+        in.flip();
+        while (in.hasRemaining()) {
+            int code = in.get() & 0xFF;
+            if (code < INPUT_COUNT) {
+                session.inputs.offer(Input.fromCode(code));
+            }
+        }
+    }
+
+    /**
+     * Gathers the shards' figures for the last interval and prints them.
+     *
+     * @param intervalNanos The time since the last report
+     * @param heapPerSession The heap each session took when the bots were
+     *        started, in bytes
+     */
+    void report(long intervalNanos, long heapPerSession) {
+        for (Shard shard : shards) {
+            shard.reportWanted = true;
+        }
+        // Shards answer at the end of their next tick
+        LockSupport.parkNanos(2 * Simulation.TICK_NANOS);
+
+        long count = 0, total = 0, p99 = 0, busy = 0, overruns = 0, ticks = 0;
+        for (Shard shard : shards) {
+            count += shard.reportedCount;
+            total += shard.reportedTotal;
+            p99 = Math.max(p99, shard.reportedP99);
+            busy += shard.reportedBusy;
+            overruns += shard.reportedOverruns;
+            ticks += shard.reportedTicks;
+        }
+        System.out.printf("%d sessions, session tick %d ns mean %d ns p99, "
+                + "shards %.0f%% busy, %d of %d shard ticks overran, "
+                + "%d KB heap per session%n", getSessionCount(),
+                count == 0 ? 0 : total / count, p99,
+                100.0 * busy / (intervalNanos * shards.length), overruns,
+                ticks, heapPerSession / 1024);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs a server.
+     * <ul>
+     * <li>--port n: listen for players on port n (default 7777)</li>
+     * <li>--bots n: start n autopilot sessions (default 0)</li>
+     * <li>--shards n: tick on n threads (default: one per core)</li>
+     * <li>--state-every n: send players the state every n ticks
+     *     (default 2)</li>
+     * <li>--report n: print figures every n seconds (default 5)</li>
+     * <li>--endless: play endless games</li>
+     * </ul>
+     *
+     * @param args Command line arguments
+     * @throws IOException if the port cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = 7777, bots = 0;
+        int shardCount = Runtime.getRuntime().availableProcessors();
+        int stateEvery = 2, reportSeconds = 5;
+        GameConfig config = new GameConfig();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--bots") && i + 1 < args.length) {
+                bots = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--shards") && i + 1 < args.length) {
+                shardCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--state-every") && i + 1 < args.length) {
+                stateEvery = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--report") && i + 1 < args.length) {
+                reportSeconds = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--endless")) {
+                config.endless = true;
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(2);
+            }
+        }
+
+        GameServer server = new GameServer(config, shardCount, stateEvery);
+        long heapBefore = usedHeap();
+        for (int i = 0; i < bots; i++) {
+            server.addSession(null);
+        }
+        long heapPerSession = bots == 0 ? 0 : (usedHeap() - heapBefore) / bots;
+        server.start();
+
+        long intervalNanos = reportSeconds * 1_000_000_000L;
+        Thread reporter = new Thread(() -> {
+            while (true) {
+                LockSupport.parkNanos(intervalNanos);
+                server.report(intervalNanos, heapPerSession);
+            }
+        }, "report");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        server.serve(port);
+    }
+}
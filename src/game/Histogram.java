@@ -0,0 +1,134 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative long values with log-linear buckets, in the
+ * manner of HdrHistogram: every power of two is split into 32 equal
+ * buckets, so any recorded value is reported to within about 3% while the
+ * whole range of a long fits in under two thousand counters. Recording
+ * never allocates.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+    private long count;
+    private long total;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public Histogram() {
+    }
+
+    /**
+     * Records one value. Negative values are counted as 0.
+     *
+     * @param value The value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        count++;
+        total += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Forgets every value recorded so far.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        total = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Gets the value below which the given share of the recorded values
+     * fall, rounded up to the top of its bucket.
+     *
+     * @param percentile The share, from 0 to 100
+     * @return The value at the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long)Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= wanted) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Counts the recorded values.
+     *
+     * @return The number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the average of the recorded values.
+     *
+     * @return The mean, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double)total / count;
+    }
+
+    /**
+     * Gets the smallest recorded value.
+     *
+     * @return The minimum, or 0 if nothing was recorded
+     */
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return The maximum, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    // Values below 32 get a bucket each; above that, the 5 bits after the
+    // highest set bit pick the bucket within its power of two.
+    private static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int)value;
+        }
+        int top = 63 - Long.numberOfLeadingZeros(value);
+        int group = top - SUB_BITS + 1;
+        int offset = (int)(value >>> (top - SUB_BITS)) - SUB_COUNT;
+        return (group << SUB_BITS) + offset;
+    }
+
+    private static long highestValueOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int group = index >>> SUB_BITS;
+        long offset = index & (SUB_COUNT - 1);
+        long lowest = (SUB_COUNT + offset) << (group - 1);
+        return lowest + (1L << (group - 1)) - 1;
+    }
+}
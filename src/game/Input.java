@@ -0,0 +1,27 @@
+package game;
+
+/**
+ * A player input, applied to the simulation between two ticks.
+ * Inputs are the only thing besides time that changes the game, so a game
+ * can be reproduced exactly from the ticks its inputs arrived on.
+ */
+public enum Input {
+    LEFT_PRESSED,
+    LEFT_RELEASED,
+    RIGHT_PRESSED,
+    RIGHT_RELEASED,
+    START,
+    RESTART;
+
+    private static final Input[] VALUES = values();
+
+    /**
+     * Gets the input with the given code.
+     *
+     * @param code The value returned by ordinal()
+     * @return The input
+     */
+    public static Input fromCode(int code) {
+        return VALUES[code];
+    }
+}
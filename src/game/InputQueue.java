@@ -0,0 +1,163 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free single-producer, single-consumer queue of timestamped inputs.
+ * The window's event thread offers inputs as keys are pressed, and the
+ * simulation drains them at the start of each tick on its own thread, so
+ * the two threads share nothing but this queue.
+ *
+ * Inputs wait at most one tick plus one frame before they are applied.
+ * The consumer measures that wait for every input it drains.
+ *
+ * As a {@link PaddleController} the queue is the keyboard: each tick it
+ * drains what the player pressed since the last one.
+ */
+public class InputQueue implements PaddleController {
+    private final long[] times;
+    private final byte[] codes;
+    private final int mask;
+
+    // Sequence numbers: head is written only by the consumer, tail only by
+    // the producer. A slot is published by the release store of tail.
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile long dropped;  // written by the producer
+
+    // Latency statistics, written by the consumer
+    private volatile long drained;
+    private volatile long totalLatency;
+    private volatile long maxLatency;
+    private volatile long lastLatency;
+
+    /**
+     * Creates a queue holding up to the given number of pending inputs.
+     *
+     * @param capacity The capacity, rounded up to a power of two
+     */
+    public InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        times = new long[size];
+        codes = new byte[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an input, stamped with the current time.
+     * Must only be called from the producer thread.
+     *
+     * @param input The input
+     * @return true if the input was queued, false if the queue was full
+     */
+    public boolean offer(Input input) {
+        return offer(input, System.nanoTime());
+    }
+
+    /**
+     * Adds an input with the given timestamp.
+     * Must only be called from the producer thread.
+     *
+     * @param input The input
+     * @param nanos When the input happened, from System.nanoTime()
+     * @return true if the input was queued, false if the queue was full
+     */
+    public boolean offer(Input input, long nanos) {
+        long t = tail.get();
+        if (t - head.getAcquire() > mask) {
+            dropped = dropped + 1;
+            return false;
+        }
+        int slot = (int)t & mask;
+        times[slot] = nanos;
+        codes[slot] = (byte)input.ordinal();
+        tail.setRelease(t + 1);
+        return true;
+    }
+
+    @Override
+    public void update(Simulation simulation) {
+        drain(simulation);
+    }
+
+    /**
+     * Applies every queued input to a simulation, in the order offered.
+     * Must only be called from the consumer thread.
+     *
+     * @param simulation The simulation to apply the inputs to
+     * @return The number of inputs applied
+     */
+    public int drain(Simulation simulation) {
+        long h = head.get();
+        long t = tail.getAcquire();
+        if (h == t) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        for (long i = h; i < t; i++) {
+            int slot = (int)i & mask;
+            long latency = now - times[slot];
+            Input input = Input.fromCode(codes[slot]);
+            head.setRelease(i + 1);
+            record(latency);
+            simulation.apply(input);
+        }
+        return (int)(t - h);
+    }
+
+    private void record(long latency) {
+        lastLatency = latency;
+        totalLatency = totalLatency + latency;
+        drained = drained + 1;
+        if (latency > maxLatency) {
+            maxLatency = latency;
+        }
+    }
+
+    /**
+     * Counts the inputs lost because the queue was full.
+     *
+     * @return The number of dropped inputs
+     */
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Counts the inputs applied so far.
+     *
+     * @return The number of drained inputs
+     */
+    public long getDrainedCount() {
+        return drained;
+    }
+
+    /**
+     * Gets how long the most recent input waited before it was applied.
+     *
+     * @return The latency in nanoseconds
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    /**
+     * Gets the longest any input waited before it was applied.
+     *
+     * @return The latency in nanoseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Gets the average wait of the inputs applied so far.
+     *
+     * @return The latency in nanoseconds, or 0 if none were applied
+     */
+    public long getMeanLatency() {
+        long count = drained;
+        return count == 0 ? 0 : totalLatency / count;
+    }
+}
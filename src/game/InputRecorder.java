@@ -0,0 +1,144 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records every input applied to a simulation, stamped with its tick, so the
+ * game can be reproduced exactly by {@link Replay}.
+ *
+ * A recording is a series of segment files, base.00000.rec, base.00001.rec
+ * and so on; a new segment is started once the current one reaches its size
+ * limit. Each segment starts with a header (magic, version, segment index,
+ * base tick and the game's {@link GameConfig}) followed by records of a
+ * varint tick delta and a one-byte input code. Closing the recorder writes an end record
+ * holding the final tick and the state checksum.
+ */
+public class InputRecorder implements Simulation.InputListener, Closeable {
+    /** "BRKR" */
+    static final int MAGIC = 0x42524B52;
+    static final byte VERSION = 4;
+    static final int END = 0x7F;
+
+    /** Default segment size: 1 MB holds hours of play. */
+    public static final long DEFAULT_SEGMENT_BYTES = 1 << 20;
+
+    private final Path base;
+    private final Simulation simulation;
+    private final long segmentBytes;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private int segment = -1;
+    private long written;  // bytes already in the current segment file
+    private long lastTick;
+
+    /**
+     * Starts recording the inputs applied to a simulation.
+     *
+     * @param base The path of the recording, without the segment suffix
+     * @param simulation The simulation to record
+     * @param segmentBytes The size at which a new segment is started
+     * @throws IOException if the first segment cannot be created
+     */
+    public InputRecorder(Path base, Simulation simulation, long segmentBytes)
+            throws IOException {
+        this.base = base;
+        this.simulation = simulation;
+        this.segmentBytes = segmentBytes;
+        this.lastTick = simulation.getTickCount();
+        openSegment();
+        simulation.addInputListener(this);
+    }
+
+    /**
+     * Gets the file holding one segment of a recording.
+     *
+     * @param base The path of the recording, without the segment suffix
+     * @param index The segment number
+     * @return The segment's path
+     */
+    public static Path segmentPath(Path base, int index) {
+        return base.resolveSibling(base.getFileName()
+                + String.format(".%05d.rec", index));
+    }
+
+    @Override
+    public void onInput(Simulation simulation, Input input) {
+        try {
+            if (written + buffer.position() >= segmentBytes) {
+                flush();
+                channel.close();
+                openSegment();
+            }
+            writeRecord(simulation.getTickCount(), input.ordinal());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the end record and closes the current segment.
+     * The recorder stops listening to the simulation.
+     *
+     * @throws IOException if the recording cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        simulation.removeInputListener(this);
+        writeRecord(simulation.getTickCount(), END);
+        buffer.putLong(simulation.checksum());
+        flush();
+        channel.close();
+        channel = null;
+    }
+
+    private void openSegment() throws IOException {
+        segment++;
+        channel = FileChannel.open(segmentPath(base, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        written = 0;
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putInt(segment);
+        buffer.putLong(lastTick);
+
+        // The config is length-prefixed so readers can buffer it in one go
+        int lengthAt = buffer.position();
+        buffer.putInt(0);
+        simulation.getConfig().write(buffer);
+        buffer.putInt(lengthAt, buffer.position() - lengthAt - 4);
+    }
+
+    private void writeRecord(long tick, int code) throws IOException {
+        // A record is at most 10 bytes of varint, one code and an 8-byte checksum
+        if (buffer.remaining() < 19) {
+            flush();
+        }
+        long delta = tick - lastTick;
+        while ((delta & ~0x7FL) != 0) {
+            buffer.put((byte)((delta & 0x7F) | 0x80));
+            delta >>>= 7;
+        }
+        buffer.put((byte)delta);
+        buffer.put((byte)code);
+        lastTick = tick;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
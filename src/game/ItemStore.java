@@ -0,0 +1,230 @@
+package game;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The falling items of a game: power-ups dropped by destroyed blocks.
+ * Like {@link BlockStore}, every item is a slot in parallel primitive
+ * arrays rather than an object. Slots are pooled: the items in play are
+ * always slots 0 to size() - 1, a removed item's slot is filled by the
+ * last one, and the arrays are reused by every item spawned after. Spawning
+ * only allocates when more items are falling at once than ever before, so
+ * any number can come and go each second at no cost to the tick.
+ *
+ * Items are axis-aligned boxes of {@link #WIDTH} by {@link #HEIGHT} in
+ * world coordinates, kept by their center.
+ */
+public class ItemStore {
+    /** Width of a falling item. */
+    public static final int WIDTH = 24;
+
+    /** Height of a falling item. */
+    public static final int HEIGHT = 10;
+
+    private double[] x, y;
+    private byte[] kind;
+    private int size = 0;
+    private int version = 0;
+
+    /**
+     * Default Constructor - empty store with room for a few items.
+     */
+    public ItemStore() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty store sized for the given number of items.
+     *
+     * @param capacity The number of items to reserve space for
+     */
+    public ItemStore(int capacity) {
+        capacity = Math.max(1, capacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        kind = new byte[capacity];
+    }
+
+    /**
+     * Drops an item.
+     *
+     * @param powerUp What the item gives when caught
+     * @param centerX The x-coordinate of the item's center
+     * @param centerY The y-coordinate of the item's center
+     * @return The slot of the new item, until an item is removed
+     */
+    public int spawn(PowerUp powerUp, double centerX, double centerY) {
+        if (size == x.length) {
+            ensureCapacity(size * 2);
+        }
+        int slot = size++;
+        x[slot] = centerX;
+        y[slot] = centerY;
+        kind[slot] = (byte)powerUp.ordinal();
+        version++;
+        return slot;
+    }
+
+    /**
+     * Removes an item. The last item moves into its slot.
+     *
+     * @param slot The slot of the item
+     */
+    public void remove(int slot) {
+        size--;
+        x[slot] = x[size];
+        y[slot] = y[size];
+        kind[slot] = kind[size];
+        version++;
+    }
+
+    /**
+     * Removes every item.
+     */
+    public void clear() {
+        if (size > 0) {
+            size = 0;
+            version++;
+        }
+    }
+
+    /**
+     * Moves every item down.
+     *
+     * @param distance How far the items fall
+     */
+    public void fall(double distance) {
+        for (int i = 0; i < size; i++) {
+            y[i] += distance;
+        }
+    }
+
+    /**
+     * Gets the number of items in play.
+     *
+     * @return The number of items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a number that changes whenever an item is spawned or removed,
+     * but not as items fall.
+     *
+     * @return The version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the x-coordinate of an item's center.
+     *
+     * @param slot The slot of the item
+     * @return The x-coordinate
+     */
+    public double getX(int slot) {
+        return x[slot];
+    }
+
+    /**
+     * Gets the y-coordinate of an item's center.
+     *
+     * @param slot The slot of the item
+     * @return The y-coordinate
+     */
+    public double getY(int slot) {
+        return y[slot];
+    }
+
+    /**
+     * Gets what an item gives when caught.
+     *
+     * @param slot The slot of the item
+     * @return The power-up
+     */
+    public PowerUp getPowerUp(int slot) {
+        return PowerUp.fromCode(kind[slot]);
+    }
+
+    /**
+     * Renders every item.
+     *
+     * @param brush The graphics context to paint on
+     */
+    public void paint(Graphics brush) {
+        for (int i = 0; i < size; i++) {
+            brush.drawImage(SpriteCache.box(WIDTH, HEIGHT,
+                    PowerUp.fromCode(kind[i]).getColor(), Color.WHITE),
+                    (int)Math.round(x[i] - WIDTH / 2.0),
+                    (int)Math.round(y[i] - HEIGHT / 2.0), null);
+        }
+    }
+
+    /**
+     * Gets the area of the screen that {@link #paint(Graphics)} draws
+     * over for one item, outline included.
+     *
+     * @param slot The slot of the item
+     * @param out The rectangle to fill in
+     * @return out, holding the item's painted bounds
+     */
+    public Rectangle getPaintBounds(int slot, Rectangle out) {
+        out.setBounds((int)Math.round(x[slot] - WIDTH / 2.0),
+                (int)Math.round(y[slot] - HEIGHT / 2.0), WIDTH + 1, HEIGHT + 1);
+        return out;
+    }
+
+    /**
+     * Gets the most bytes {@link #writeState} writes for the items in play.
+     *
+     * @return The size in bytes
+     */
+    public int getStateSize() {
+        return 4 + size * 17;
+    }
+
+    /**
+     * Writes the items: their count, then each one's power-up and center.
+     *
+     * @param out The buffer to write to
+     */
+    public void writeState(ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.put(kind[i]).putDouble(x[i]).putDouble(y[i]);
+        }
+    }
+
+    /**
+     * Replaces the items with those written by {@link #writeState}.
+     *
+     * @param in The buffer to read from
+     * @throws IllegalArgumentException if the state is malformed
+     */
+    public void readState(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 17) {
+            throw new IllegalArgumentException("Bad item count " + count);
+        }
+        clear();
+        for (int i = 0; i < count; i++) {
+            int code = in.get();
+            if (code < 0 || code >= PowerUp.COUNT) {
+                throw new IllegalArgumentException("Bad power-up " + code);
+            }
+            spawn(PowerUp.fromCode(code), in.getDouble(), in.getDouble());
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > x.length) {
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            kind = Arrays.copyOf(kind, capacity);
+        }
+    }
+}
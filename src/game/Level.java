@@ -0,0 +1,159 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * The blocks of one level as plain data: a world rectangle, a color and a
+ * number of hit points per block. Used to build and convert level files;
+ * the game itself loads levels from a {@link LevelPack} straight into its
+ * block storage without going through a Level.
+ */
+public class Level implements LevelPack.BlockSink {
+    private int size = 0;
+    private int[] left = new int[16], top = new int[16];
+    private int[] width = new int[16], height = new int[16];
+    private int[] argb = new int[16];
+    private int[] hitPoints = new int[16];
+
+    /**
+     * Creates an empty level.
+     */
+    public Level() {
+    }
+
+    /**
+     * Makes the level a {@link GameConfig} describes with its grid fields,
+     * the one {@link BlockManager#createBlockGrid} builds, row colors and
+     * hit points included. Blocks are placed on whole pixels.
+     *
+     * @param config The config
+     * @return The level
+     */
+    public static Level grid(GameConfig config) {
+        Level level = new Level();
+        for (int row = 0; row < config.rows; row++) {
+            int color = config.colors[row % config.colors.length].getRGB();
+            int hits = config.hitPoints[row % config.hitPoints.length];
+            for (int col = 0; col < config.cols; col++) {
+                int posX = config.gridX + col * (config.blockWidth + config.padding);
+                int posY = config.gridY + row * (config.blockHeight + config.padding);
+
+                // A Polygon sits a quarter of its size up and left of its position.
+                level.add((int)Math.round(posX - config.blockWidth / 4.0),
+                        (int)Math.round(posY - config.blockHeight / 4.0),
+                        config.blockWidth, config.blockHeight, color, hits);
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Adds a block.
+     *
+     * @param left The x-coordinate of the block's left edge
+     * @param top The y-coordinate of the block's top edge
+     * @param width The width of the block
+     * @param height The height of the block
+     * @param color The block color as 0xAARRGGBB
+     * @param hits The number of hits the block takes to destroy
+     * @return The index of the new block
+     */
+    public int add(int left, int top, int width, int height, int color,
+            int hits) {
+        if (size == this.left.length) {
+            int capacity = size * 2;
+            this.left = Arrays.copyOf(this.left, capacity);
+            this.top = Arrays.copyOf(this.top, capacity);
+            this.width = Arrays.copyOf(this.width, capacity);
+            this.height = Arrays.copyOf(this.height, capacity);
+            this.argb = Arrays.copyOf(this.argb, capacity);
+            this.hitPoints = Arrays.copyOf(this.hitPoints, capacity);
+        }
+        this.left[size] = left;
+        this.top[size] = top;
+        this.width[size] = width;
+        this.height[size] = height;
+        this.argb[size] = color;
+        this.hitPoints[size] = hits;
+        return size++;
+    }
+
+    @Override
+    public void begin(int blockCount) {
+    }
+
+    @Override
+    public void block(int left, int top, int width, int height, int color,
+            int hits) {
+        add(left, top, width, height, color, hits);
+    }
+
+    /**
+     * Gets the number of blocks.
+     *
+     * @return The number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the x-coordinate of a block's left edge.
+     *
+     * @param i The block's index
+     * @return The left edge
+     */
+    public int getLeft(int i) {
+        return left[i];
+    }
+
+    /**
+     * Gets the y-coordinate of a block's top edge.
+     *
+     * @param i The block's index
+     * @return The top edge
+     */
+    public int getTop(int i) {
+        return top[i];
+    }
+
+    /**
+     * Gets the width of a block.
+     *
+     * @param i The block's index
+     * @return The width
+     */
+    public int getWidth(int i) {
+        return width[i];
+    }
+
+    /**
+     * Gets the height of a block.
+     *
+     * @param i The block's index
+     * @return The height
+     */
+    public int getHeight(int i) {
+        return height[i];
+    }
+
+    /**
+     * Gets the color of a block.
+     *
+     * @param i The block's index
+     * @return The color as 0xAARRGGBB
+     */
+    public int getColor(int i) {
+        return argb[i];
+    }
+
+    /**
+     * Gets the number of hits a block takes to destroy.
+     *
+     * @param i The block's index
+     * @return The hit points
+     */
+    public int getHitPoints(int i) {
+        return hitPoints[i];
+    }
+}
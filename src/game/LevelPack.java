@@ -0,0 +1,363 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A file of one or more levels in a compact binary form, memory-mapped so
+ * that loading a level reads its blocks straight out of the page cache.
+ *
+ * The file starts with a header (magic "BRKL", version, level count)
+ * followed by an index of each level's offset and length, so any level
+ * can be found without reading the others. A level is its block count, a
+ * palette of up to 256 colors, and 14 bytes per block: left and top as
+ * ints, width and height as unsigned shorts, a palette index and a hit
+ * point count, 255 for a block that cannot be destroyed.
+ *
+ * Packs are made from a text form with one "level" line per level, each
+ * followed by "block left top width height color hits" lines, the color
+ * in hex as AARRGGBB. Lines starting with # are comments. Run this class
+ * to convert between the two forms.
+ */
+public class LevelPack implements Closeable {
+    /** "BRKL" */
+    static final int MAGIC = 0x42524B4C;
+    static final byte VERSION = 1;
+    static final int BLOCK_BYTES = 14;
+
+    private final Path path;
+    private MappedByteBuffer map;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    /**
+     * Receives the blocks of a level as it is read.
+     */
+    public interface BlockSink {
+        /**
+         * Called once before the blocks, with their number.
+         *
+         * @param blockCount The number of blocks that follow
+         */
+        void begin(int blockCount);
+
+        /**
+         * Called for each block, in file order.
+         *
+         * @param left The x-coordinate of the block's left edge
+         * @param top The y-coordinate of the block's top edge
+         * @param width The width of the block
+         * @param height The height of the block
+         * @param color The block color as 0xAARRGGBB
+         * @param hits The number of hits the block takes to destroy
+         */
+        void block(int left, int top, int width, int height, int color,
+                int hits);
+    }
+
+    private LevelPack(Path path, MappedByteBuffer map, int[] offsets,
+            int[] lengths) {
+        this.path = path;
+        this.map = map;
+        this.offsets = offsets;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Maps a level pack file.
+     *
+     * @param path The file
+     * @return The pack
+     * @throws IOException if the file cannot be read or is not a level pack
+     */
+    public static LevelPack open(Path path) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(path)) {
+            // The mapping stays valid after the channel is closed
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (map.getInt() != MAGIC) {
+                throw new IOException("Not a level pack: " + path);
+            }
+            if (map.get() != VERSION) {
+                throw new IOException("Unsupported level pack version: " + path);
+            }
+            int count = map.getInt();
+            int[] offsets = new int[count];
+            int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                long offset = map.getLong();
+                lengths[i] = map.getInt();
+                if (offset < 0 || offset + lengths[i] > map.capacity()) {
+                    throw new IOException("Level " + i + " lies outside " + path);
+                }
+                offsets[i] = (int)offset;
+            }
+            return new LevelPack(path, map, offsets, lengths);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated level pack: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the number of levels in the pack.
+     *
+     * @return The number of levels
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Gets the bytes of one level, to hand to a block container's load
+     * method. The buffer is a view of the mapped file, not a copy.
+     *
+     * @param index The level's position in the pack
+     * @return A read-only buffer holding just that level
+     */
+    public ByteBuffer level(int index) {
+        if (map == null) {
+            throw new IllegalStateException("Level pack closed: " + path);
+        }
+        return map.slice(offsets[index], lengths[index]).asReadOnlyBuffer();
+    }
+
+    /**
+     * Drops the pack's reference to the mapping. Buffers already handed
+     * out by {@link #level(int)} stay usable; the mapping is released once
+     * they are all unreachable.
+     */
+    @Override
+    public void close() {
+        map = null;
+    }
+
+    /**
+     * Reads one level, handing each block to a sink as it is decoded.
+     *
+     * @param level The level's bytes, as from {@link #level(int)}
+     * @param sink Receives the blocks
+     * @throws IllegalArgumentException if the level is malformed
+     */
+    public static void read(ByteBuffer level, BlockSink sink) {
+        try {
+            int count = level.getInt();
+            int[] palette = new int[level.getShort() & 0xFFFF];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = level.getInt();
+            }
+            if (count < 0 || level.remaining() < (long)count * BLOCK_BYTES) {
+                throw new IllegalArgumentException("Truncated level");
+            }
+            sink.begin(count);
+            for (int i = 0; i < count; i++) {
+                int left = level.getInt();
+                int top = level.getInt();
+                int width = level.getShort() & 0xFFFF;
+                int height = level.getShort() & 0xFFFF;
+                int color = palette[level.get() & 0xFF];
+                int hits = level.get() & 0xFF;
+                sink.block(left, top, width, height, color, hits);
+            }
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed level", e);
+        }
+    }
+
+    /**
+     * Writes levels to a pack file.
+     *
+     * @param path The file to write, replaced if it exists
+     * @param levels The levels, in order
+     * @throws IOException if the file cannot be written or a level does
+     *         not fit the format
+     */
+    public static void write(Path path, List<Level> levels) throws IOException {
+        ArrayList<ByteBuffer> bodies = new ArrayList<ByteBuffer>();
+        for (Level level : levels) {
+            bodies.add(encode(level));
+        }
+
+        int headerBytes = 9 + 12 * levels.size();
+        ByteBuffer header = ByteBuffer.allocate(headerBytes);
+        header.putInt(MAGIC).put(VERSION).putInt(levels.size());
+        long offset = headerBytes;
+        for (ByteBuffer body : bodies) {
+            header.putLong(offset).putInt(body.remaining());
+            offset += body.remaining();
+        }
+        header.flip();
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (ByteBuffer body : bodies) {
+                while (body.hasRemaining()) {
+                    out.write(body);
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer encode(Level level) throws IOException {
+        HashMap<Integer, Integer> colors = new HashMap<Integer, Integer>();
+        ArrayList<Integer> palette = new ArrayList<Integer>();
+        for (int i = 0; i < level.size(); i++) {
+            if (!colors.containsKey(level.getColor(i))) {
+                colors.put(level.getColor(i), palette.size());
+                palette.add(level.getColor(i));
+            }
+        }
+        if (palette.size() > 256) {
+            throw new IOException("A level may use at most 256 colors");
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(6 + 4 * palette.size()
+                + BLOCK_BYTES * level.size());
+        body.putInt(level.size()).putShort((short)palette.size());
+        for (int color : palette) {
+            body.putInt(color);
+        }
+        for (int i = 0; i < level.size(); i++) {
+            if (level.getWidth(i) > 0xFFFF || level.getHeight(i) > 0xFFFF
+                    || level.getWidth(i) < 0 || level.getHeight(i) < 0) {
+                throw new IOException("Block " + i + " is too large");
+            }
+            if (level.getHitPoints(i) < 0 || level.getHitPoints(i) > 0xFF) {
+                throw new IOException("Block " + i + " has too many hit points");
+            }
+            body.putInt(level.getLeft(i)).putInt(level.getTop(i));
+            body.putShort((short)level.getWidth(i));
+            body.putShort((short)level.getHeight(i));
+            body.put((byte)(int)colors.get(level.getColor(i)));
+            body.put((byte)level.getHitPoints(i));
+        }
+        body.flip();
+        return body;
+    }
+
+    /**
+     * Reads levels in the text form.
+     *
+     * @param in The text
+     * @return The levels, in order
+     * @throws IOException if the text cannot be read or is malformed
+     */
+    public static List<Level> readText(BufferedReader in) throws IOException {
+        ArrayList<Level> levels = new ArrayList<Level>();
+        Level level = null;
+        int lineNumber = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if (words[0].equals("level") && words.length == 1) {
+                level = new Level();
+                levels.add(level);
+            } else if (words[0].equals("block") && words.length == 7
+                    && level != null) {
+                try {
+                    level.add(Integer.parseInt(words[1]),
+                            Integer.parseInt(words[2]),
+                            Integer.parseInt(words[3]),
+                            Integer.parseInt(words[4]),
+                            Integer.parseUnsignedInt(words[5], 16),
+                            Integer.parseInt(words[6]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad number on line " + lineNumber, e);
+                }
+            } else {
+                throw new IOException("Cannot read line " + lineNumber + ": " + line);
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Writes levels in the text form.
+     *
+     * @param out Where to write the text
+     * @param levels The levels, in order
+     * @throws IOException if the text cannot be written
+     */
+    public static void writeText(BufferedWriter out, List<Level> levels)
+            throws IOException {
+        out.write("# level: block left top width height color hits");
+        out.newLine();
+        for (Level level : levels) {
+            out.write("level");
+            out.newLine();
+            for (int i = 0; i < level.size(); i++) {
+                out.write(String.format("block %d %d %d %d %08x %d",
+                        level.getLeft(i), level.getTop(i), level.getWidth(i),
+                        level.getHeight(i), level.getColor(i),
+                        level.getHitPoints(i)));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Converts level packs between the binary and text forms.
+     * <ul>
+     * <li>pack in.txt out.lvl: text to binary</li>
+     * <li>unpack in.lvl out.txt: binary to text</li>
+     * <li>classic out.txt: the built-in level, as text</li>
+     * </ul>
+     *
+     * @param args Command line arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("pack")) {
+            try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]),
+                    StandardCharsets.UTF_8)) {
+                write(Paths.get(args[2]), readText(in));
+            }
+        } else if (args.length == 3 && args[0].equals("unpack")) {
+            ArrayList<Level> levels = new ArrayList<Level>();
+            try (LevelPack pack = open(Paths.get(args[1]))) {
+                for (int i = 0; i < pack.size(); i++) {
+                    Level level = new Level();
+                    read(pack.level(i), level);
+                    levels.add(level);
+                }
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[2]),
+                    StandardCharsets.UTF_8)) {
+                writeText(out, levels);
+            }
+        } else if (args.length == 2 && args[0].equals("classic")) {
+            ArrayList<Level> levels = new ArrayList<Level>();
+            levels.add(Level.grid(new GameConfig()));
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[1]),
+                    StandardCharsets.UTF_8)) {
+                writeText(out, levels);
+            }
+        } else {
+            System.err.println("Usage: LevelPack pack in.txt out.lvl"
+                    + " | unpack in.lvl out.txt | classic out.txt");
+            System.exit(2);
+        }
+    }
+}
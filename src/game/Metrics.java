@@ -0,0 +1,260 @@
+package game;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Timings and counters for the game loop, kept in {@link Histogram}s over a
+ * fixed window (one second by default). When a window ends its percentiles
+ * are kept for display and, if an export file is set, written out as CSV
+ * rows, one per metric; the histograms then start over. Recording never
+ * allocates, so the numbers are not disturbed by measuring them.
+ *
+ * A Metrics object belongs to the thread that runs its simulation and
+ * renders it; it is not safe to share between threads.
+ */
+public class Metrics implements Closeable {
+    /**
+     * What is measured. Times are in nanoseconds, allocations in bytes.
+     */
+    public enum Metric {
+        /** One simulation tick, inputs and collisions included. */
+        TICK("tick"),
+        /** The collision rounds of a tick. */
+        COLLISIONS("collisions"),
+        /** One rendered frame. */
+        FRAME("frame"),
+        /** Block updates and background repair within a frame. */
+        BLOCKS("blocks"),
+        /** Drawing the paddle. */
+        PADDLE("paddle"),
+        /** Drawing every ball. */
+        BALLS("balls"),
+        /** Drawing the score, lives and messages. */
+        HUD("hud"),
+        /** Bytes allocated by the simulating thread during one tick. */
+        ALLOCATED("alloc-bytes"),
+        /** Circle-versus-box tests made during one tick. */
+        COLLISION_TESTS("collision-tests");
+
+        private final String label;
+
+        Metric(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Gets the name the metric is shown and exported under.
+         *
+         * @return The label
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private final long interval;
+    private final Histogram[] histograms = new Histogram[METRICS.length];
+    private long windowStart = System.nanoTime();
+
+    // Summary of the last complete window, indexed by metric
+    private final long[] counts = new long[METRICS.length];
+    private final double[] means = new double[METRICS.length];
+    private final long[] p50 = new long[METRICS.length];
+    private final long[] p90 = new long[METRICS.length];
+    private final long[] p99 = new long[METRICS.length];
+    private final long[] max = new long[METRICS.length];
+
+    private long tickStart, tickAllocated;
+    private BufferedWriter export;
+
+    /**
+     * Creates metrics over one-second windows.
+     */
+    public Metrics() {
+        this(1_000_000_000L);
+    }
+
+    /**
+     * Creates metrics over windows of the given length.
+     *
+     * @param intervalNanos The length of a window in nanoseconds
+     */
+    public Metrics(long intervalNanos) {
+        this.interval = intervalNanos;
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Starts writing each finished window to a CSV file. The file starts
+     * with a header row and gets one row per metric per window.
+     *
+     * @param path The file to write, replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public void exportTo(Path path) throws IOException {
+        close();
+        export = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        export.write("time_ms,metric,count,mean,p50,p90,p99,max");
+        export.newLine();
+    }
+
+    /**
+     * Stops exporting and closes the export file, if any.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (export != null) {
+            export.close();
+            export = null;
+        }
+    }
+
+    /**
+     * Records one measurement.
+     *
+     * @param metric What was measured
+     * @param value The time in nanoseconds, or the amount counted
+     */
+    public void record(Metric metric, long value) {
+        histograms[metric.ordinal()].record(value);
+    }
+
+    /**
+     * Marks the start of a simulation tick.
+     */
+    public void beginTick() {
+        tickAllocated = THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+        tickStart = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the tick begun by {@link #beginTick()}.
+     *
+     * @param collisionTests The collision tests the tick made
+     */
+    public void endTick(long collisionTests) {
+        long now = System.nanoTime();
+        histograms[Metric.TICK.ordinal()].record(now - tickStart);
+        if (THREADS != null) {
+            histograms[Metric.ALLOCATED.ordinal()].record(
+                    THREADS.getCurrentThreadAllocatedBytes() - tickAllocated);
+        }
+        histograms[Metric.COLLISION_TESTS.ordinal()].record(collisionTests);
+        poll(now);
+    }
+
+    /**
+     * Ends the current window if it has run its length.
+     *
+     * @param now The current System.nanoTime()
+     */
+    public void poll(long now) {
+        if (now - windowStart < interval) {
+            return;
+        }
+        windowStart = now;
+        for (int i = 0; i < METRICS.length; i++) {
+            Histogram histogram = histograms[i];
+            counts[i] = histogram.getCount();
+            means[i] = histogram.getMean();
+            p50[i] = histogram.getValueAtPercentile(50);
+            p90[i] = histogram.getValueAtPercentile(90);
+            p99[i] = histogram.getValueAtPercentile(99);
+            max[i] = histogram.getMax();
+            histogram.reset();
+        }
+        if (export != null) {
+            writeWindow(now / 1_000_000);
+        }
+    }
+
+    private void writeWindow(long millis) {
+        try {
+            for (int i = 0; i < METRICS.length; i++) {
+                export.write(millis + "," + METRICS[i].getLabel() + ","
+                        + counts[i] + "," + Math.round(means[i]) + "," + p50[i]
+                        + "," + p90[i] + "," + p99[i] + "," + max[i]);
+                export.newLine();
+            }
+            export.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Counts the measurements in the last complete window.
+     *
+     * @param metric The metric
+     * @return The count
+     */
+    public long getCount(Metric metric) {
+        return counts[metric.ordinal()];
+    }
+
+    /**
+     * Gets the mean of the last complete window.
+     *
+     * @param metric The metric
+     * @return The mean
+     */
+    public double getMean(Metric metric) {
+        return means[metric.ordinal()];
+    }
+
+    /**
+     * Gets the median of the last complete window.
+     *
+     * @param metric The metric
+     * @return The 50th percentile
+     */
+    public long getP50(Metric metric) {
+        return p50[metric.ordinal()];
+    }
+
+    /**
+     * Gets the 99th percentile of the last complete window.
+     *
+     * @param metric The metric
+     * @return The 99th percentile
+     */
+    public long getP99(Metric metric) {
+        return p99[metric.ordinal()];
+    }
+
+    /**
+     * Gets the largest value of the last complete window.
+     *
+     * @param metric The metric
+     * @return The maximum
+     */
+    public long getMax(Metric metric) {
+        return max[metric.ordinal()];
+    }
+}
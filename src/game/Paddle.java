@@ -1,6 +1,7 @@
 package game;
 
 import java.awt.*;
+import java.awt.image.BufferedImage;
 
 /**
  * Represents the player-controlled paddle in the Breakout game.
@@ -11,6 +12,9 @@ public class Paddle extends Polygon {
     private boolean movingLeft = false;
     private boolean movingRight = false;
     private int width;
+    private int height;
+    private BufferedImage sprite;
+    private final Rectangle bounds = new Rectangle();
 
     /**
      * Functional interface for collision checking.
@@ -45,25 +49,90 @@ public class Paddle extends Polygon {
         
         this.speed = speed;
         this.width = width;
+        this.height = height;
     }
     
     /**
      * Renders the paddle on the screen.
+     * Draws a pre-rendered image of the paddle at its current position.
      *
      * @param brush The graphics context to paint on
      */
     public void paint(Graphics brush) {
-        Point[] points = super.getPoints();
-        int[] xVals = new int[points.length];
-        int[] yVals = new int[points.length];
+        getPaintBounds(bounds);
         
-        for (int i = 0; i < points.length; i++) {
-            xVals[i] = (int)Math.round(points[i].getX());
-            yVals[i] = (int)Math.round(points[i].getY());
+        // Rounding can change the size by a pixel as the paddle moves
+        if (sprite == null || sprite.getWidth() != bounds.width ||
+                sprite.getHeight() != bounds.height) {
+            sprite = SpriteCache.box(bounds.width, bounds.height, Color.GRAY, null);
         }
-        
-        brush.setColor(Color.GRAY);
-        brush.fillPolygon(xVals, yVals, points.length);
+        brush.drawImage(sprite, bounds.x, bounds.y, null);
+    }
+    
+    /**
+     * Gets the area of the screen that {@link #paint(Graphics)} draws over.
+     *
+     * @param out The rectangle to fill in
+     * @return out, holding the paddle's painted bounds
+     */
+    public Rectangle getPaintBounds(Rectangle out) {
+        Point[] points = super.getPoints();
+        int left = (int)Math.round(points[0].getX());
+        int top = (int)Math.round(points[0].getY());
+        int right = left, bottom = top;
+        for (Point p : points) {
+            left = Math.min(left, (int)Math.round(p.getX()));
+            top = Math.min(top, (int)Math.round(p.getY()));
+            right = Math.max(right, (int)Math.round(p.getX()));
+            bottom = Math.max(bottom, (int)Math.round(p.getY()));
+        }
+        out.setBounds(left, top, right - left, bottom - top);
+        return out;
+    }
+    
+    /**
+     * Puts the paddle back at the given position, standing still, as a
+     * new paddle would be.
+     *
+     * @param posX The new x-coordinate of the paddle's position
+     * @param posY The new y-coordinate of the paddle's position
+     */
+    public void reset(double posX, double posY) {
+        setPosition(posX, posY);
+        movingLeft = false;
+        movingRight = false;
+    }
+    
+    /**
+     * Changes the paddle's width, as for a wide-paddle power-up. The
+     * paddle keeps its position, and a Polygon sits a quarter of its width
+     * left of its position, so the left edge moves by a quarter of the
+     * change and the right edge by the rest. The simulation also moves the
+     * position back by a quarter of the change, so the paddle grows or
+     * shrinks about its middle.
+     *
+     * @param width The new width
+     */
+    public void setWidth(int width) {
+        if (width == this.width) {
+            return;
+        }
+        reshape(new Point[] {
+            new Point(0, 0),
+            new Point(width, 0),
+            new Point(width, height),
+            new Point(0, height)
+        });
+        this.width = width;
+    }
+
+    /**
+     * Gets the paddle's width.
+     *
+     * @return The width
+     */
+    public int getWidth() {
+        return width;
     }
     
     /**
@@ -84,6 +153,24 @@ public class Paddle extends Polygon {
         this.movingRight = moving;
     }
     
+    /**
+     * Checks if the paddle is moving left.
+     *
+     * @return true if the paddle is moving left, false otherwise
+     */
+    public boolean isMovingLeft() {
+        return movingLeft;
+    }
+    
+    /**
+     * Checks if the paddle is moving right.
+     *
+     * @return true if the paddle is moving right, false otherwise
+     */
+    public boolean isMovingRight() {
+        return movingRight;
+    }
+    
     /**
      * Updates the paddle's position based on its movement state.
      * Ensures the paddle stays within the screen boundaries.
@@ -92,10 +179,10 @@ public class Paddle extends Polygon {
      */
     public void update(int screenWidth) {
         if (movingLeft) {
-            position.setX(Math.max(0, position.getX() - speed));
+            setPosition(Math.max(0, getX() - speed), getY());
         }
         if (movingRight) {
-            position.setX(Math.min(screenWidth - width, position.getX() + speed));
+            setPosition(Math.min(screenWidth - width, getX() + speed), getY());
         }
     }
 
@@ -126,6 +213,77 @@ public class Paddle extends Polygon {
         return checkCollisionHelper(ball, checker);
     }
     
+    /**
+     * Gets the y-coordinate of the paddle's top edge.
+     *
+     * @return The top edge
+     */
+    public double getTop() {
+        Point[] points = getPoints();
+        double top = points[0].getY();
+        for (Point p : points) {
+            top = Math.min(top, p.getY());
+        }
+        return top;
+    }
+
+    /**
+     * Checks if a box touches the paddle, as a falling item does when it is
+     * caught.
+     *
+     * @param minX The left edge of the box
+     * @param minY The top edge of the box
+     * @param maxX The right edge of the box
+     * @param maxY The bottom edge of the box
+     * @return true if the box and the paddle overlap, false otherwise
+     */
+    public boolean checkCollision(double minX, double minY, double maxX,
+            double maxY) {
+        Point[] points = getPoints();
+        double left = points[0].getX(), right = left;
+        double top = points[0].getY(), bottom = top;
+        for (Point p : points) {
+            left = Math.min(left, p.getX());
+            right = Math.max(right, p.getX());
+            top = Math.min(top, p.getY());
+            bottom = Math.max(bottom, p.getY());
+        }
+        return minX <= right && maxX >= left && minY <= bottom && maxY >= top;
+    }
+    
+    /**
+     * Sweeps the ball along a move and checks if it would touch the paddle
+     * before any contact found so far.
+     *
+     * @param ball The ball at the start of the move
+     * @param dx The distance the ball moves in the x direction
+     * @param dy The distance the ball moves in the y direction
+     * @param contact Receives the paddle if it is the earliest contact
+     * @return true if the paddle became the earliest contact, false otherwise
+     */
+    public boolean sweep(Ball ball, double dx, double dy, Contact contact) {
+        Point[] points = getPoints();
+        double minX = points[0].getX(), maxX = minX;
+        double minY = points[0].getY(), maxY = minY;
+        for (Point p : points) {
+            minX = Math.min(minX, p.getX());
+            maxX = Math.max(maxX, p.getX());
+            minY = Math.min(minY, p.getY());
+            maxY = Math.max(maxY, p.getY());
+        }
+        return contact.sweepCircle(ball.getX(), ball.getY(), ball.getRadius(),
+                dx, dy, minX, minY, maxX, maxY);
+    }
+    
+    /**
+     * Gets the point along the paddle that sends the ball straight up.
+     *
+     * @return The x-coordinate of the paddle's center
+     */
+    public double getCenterX() {
+        return getX() + (width / 2);
+    }
+    
     /**
      * Calculates the angle at which the ball should bounce off the paddle.
      * The angle depends on where the ball hits the paddle.
@@ -134,8 +292,8 @@ public class Paddle extends Polygon {
      * @return The x-component of the ball's new velocity
      */
     public int calculateBallAngle(Ball ball) {
-        double paddleCenter = position.getX() + (width / 2);
-        double ballCenter = ball.position.getX();
+        double paddleCenter = getCenterX();
+        double ballCenter = ball.getX();
         double difference = ballCenter - paddleCenter;
         
         return (int)(difference / 10);
@@ -0,0 +1,15 @@
+package game;
+
+/**
+ * Something that plays the paddle: a person at the keyboard, a recording or
+ * a script. A controller is asked once per tick, before the simulation
+ * advances, and plays by applying {@link Input}s to the simulation.
+ */
+public interface PaddleController {
+    /**
+     * Decides and applies this tick's inputs.
+     *
+     * @param simulation The simulation to control
+     */
+    void update(Simulation simulation);
+}
@@ -8,21 +8,39 @@ DESCRIPTION: A polygon is a sequence of points in space defined by a set of
              The rotation is measured in degrees, 0-360.
 USAGE: You are intended to instantiate this class with a set of points that
        forever defines its shape, and then modify it by repositioning and
-       rotating that shape. In defining the shape, the relative positions
-       of the points you provide are used, in other words: {(0,1),(1,1),(1,0)}
-       is the same shape as {(9,10),(10,10),(10,9)}.
+       rotating that shape through setPosition, setRotation and rotate. In
+       defining the shape, the relative positions of the points you provide
+       are used, in other words: {(0,1),(1,1),(1,0)} is the same shape as
+       {(9,10),(10,10),(10,9)}.
 NOTE: You don't need to worry about the "magic math" details.
+      The transformed points are cached and only recomputed after the
+      position or rotation changes, so static shapes cost nothing per frame.
 
 */
 
 class Polygon {
   private Point[] shape;   // An array of points.
-  public Point position;   // The offset mentioned above.
-  public double rotation; // Zero degrees is due east.
+  private Point position;  // The offset mentioned above.
+  private double rotation; // Zero degrees is due east.
+  
+  private Point center;    // The centroid of the shape, fixed at creation.
+  private Point[] points;  // The shape after rotation and offset, cached.
+  private boolean dirty = true;
+  
+  // Sine and cosine of every whole degree from -359 to 359, since rotate
+  // only ever turns by whole degrees. The entries are exactly what Math
+  // gives for those angles, so the table changes no result.
+  private static final double[] SIN = new double[719], COS = new double[719];
+  static {
+    for (int degrees = -359; degrees <= 359; degrees++) {
+      SIN[degrees + 359] = Math.sin(Math.toRadians(degrees));
+      COS[degrees + 359] = Math.cos(Math.toRadians(degrees));
+    }
+  }
   
   public Polygon(Point[] inShape, Point inPosition, double inRotation) {
     shape = inShape;
-    position = inPosition;
+    position = inPosition.clone();
     rotation = inRotation;
     
     // First, we find the shape's top-most left-most boundary, its origin.
@@ -37,6 +55,7 @@ class Polygon {
       p.x -= origin.x;
       p.y -= origin.y;
     }
+    initCache();
   }
 
 	public Polygon(int points, int radius, Point inPosition, double inRotation) {
@@ -46,24 +65,33 @@ class Polygon {
 			shape[i] = new Point(radius * Math.cos(Math.toRadians(degrees * i)), 
 					radius * Math.sin(Math.toRadians(degrees * i)));
 		}
-		position = inPosition;
+		position = inPosition.clone();
 		rotation = inRotation;
+		initCache();
   }
   
   // "getPoints" applies the rotation and offset to the shape of the polygon.
+  // The array and its points belong to the polygon and are updated in place
+  // when it moves, so callers must copy anything they want to keep.
   public Point[] getPoints() {
-    Point center = findCenter();
-    Point[] points = new Point[shape.length];
-    for (int i = 0; i < shape.length; i++) {
-//    for (Point p : shape) {
-      Point p = shape[i];
-      double x = ((p.x-center.x) * Math.cos(Math.toRadians(rotation)))
-               - ((p.y-center.y) * Math.sin(Math.toRadians(rotation)))
-               + center.x/2 + position.x;
-      double y = ((p.x-center.x) * Math.sin(Math.toRadians(rotation)))
-               + ((p.y-center.y) * Math.cos(Math.toRadians(rotation)))
-               + center.y/2 + position.y;
-      points[i] = new Point(x,y);
+    if (dirty) {
+      double cos, sin;
+      int whole = (int)rotation;
+      if (whole == rotation && whole > -360 && whole < 360) {
+        cos = COS[whole + 359];
+        sin = SIN[whole + 359];
+      } else {
+        cos = Math.cos(Math.toRadians(rotation));
+        sin = Math.sin(Math.toRadians(rotation));
+      }
+      for (int i = 0; i < shape.length; i++) {
+        Point p = shape[i];
+        points[i].x = ((p.x-center.x) * cos) - ((p.y-center.y) * sin)
+                    + center.x/2 + position.x;
+        points[i].y = ((p.x-center.x) * sin) + ((p.y-center.y) * cos)
+                    + center.y/2 + position.y;
+      }
+      dirty = false;
     }
     return points;
   }
@@ -83,7 +111,50 @@ class Polygon {
     return crossingNumber%2 == 1;
   }
   
-  public void rotate(int degrees) {rotation = (rotation+degrees)%360;}
+  // The remainder is a library call, slow on some processors, and only
+  // changes the angle once it has come full circle.
+  public void rotate(int degrees) {
+    double turned = rotation + degrees;
+    setRotation(turned > -360 && turned < 360 ? turned : turned % 360);
+  }
+  
+  public double getX() {return position.x;}
+  public double getY() {return position.y;}
+  public double getRotation() {return rotation;}
+  
+  public void setPosition(double x, double y) {
+    if (x != position.x || y != position.y) {
+      position.x = x;
+      position.y = y;
+      dirty = true;
+    }
+  }
+  
+  public void setPosition(Point p) {setPosition(p.x, p.y);}
+  
+  public void setRotation(double degrees) {
+    if (degrees != rotation) {
+      rotation = degrees;
+      dirty = true;
+    }
+  }
+  
+  // "reshape" swaps in a new shape, for the rare object that changes size,
+  // like a paddle that grows. Position and rotation are kept.
+  protected void reshape(Point[] inShape) {
+    Point origin = inShape[0].clone();
+    for (Point p : inShape) {
+      if (p.x < origin.x) origin.x = p.x;
+      if (p.y < origin.y) origin.y = p.y;
+    }
+    for (Point p : inShape) {
+      p.x -= origin.x;
+      p.y -= origin.y;
+    }
+    shape = inShape;
+    initCache();
+    dirty = true;
+  }
   
   /*
   The following methods are private access restricted because, as this access
@@ -91,6 +162,15 @@ class Polygon {
   methods in this class that are not private. They can't be used anywhere else.
   */
   
+  // "initCache" allocates the transformed points once per shape.
+  private void initCache() {
+    center = findCenter();
+    points = new Point[shape.length];
+    for (int i = 0; i < shape.length; i++) {
+      points[i] = new Point(0,0);
+    }
+  }
+  
   // "findArea" implements some more magic math.
   private double findArea() {
     double sum = 0;
@@ -0,0 +1,47 @@
+package game;
+
+import java.awt.Color;
+
+/**
+ * A power-up dropped by a destroyed block. It falls as an item in the
+ * simulation's {@link ItemStore} and takes effect when the paddle catches
+ * it. Wide paddle and slow ball last {@link GameConfig#powerUpTicks} ticks.
+ */
+public enum PowerUp {
+    /** Makes the paddle half as wide again. */
+    WIDE_PADDLE(Color.CYAN),
+    /** Puts two more balls into play beside the first. */
+    MULTI_BALL(Color.MAGENTA),
+    /** Halves the speed of every ball. */
+    SLOW_BALL(Color.GREEN);
+
+    private static final PowerUp[] VALUES = values();
+
+    /** The number of power-ups. */
+    static final int COUNT = VALUES.length;
+
+    private final Color color;
+
+    PowerUp(Color color) {
+        this.color = color;
+    }
+
+    /**
+     * Gets the color the falling item is drawn in.
+     *
+     * @return The color
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Gets the power-up with the given code.
+     *
+     * @param code The value returned by ordinal()
+     * @return The power-up
+     */
+    public static PowerUp fromCode(int code) {
+        return VALUES[code];
+    }
+}
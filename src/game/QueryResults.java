@@ -0,0 +1,77 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * Reusable buffer receiving the ids found by a {@link BlockTree} or
+ * {@link SpatialGrid} query. Each caller owns its own, so queries on
+ * different threads never share one.
+ */
+class QueryResults {
+    private int[] ids = new int[16];
+    private int count = 0;
+    private boolean ordered = true; // appended ids are ascending
+
+    /**
+     * Gets one id found by the last query.
+     *
+     * @param i The position of the id, from 0 to size()
+     * @return The id
+     */
+    int get(int i) {
+        return ids[i];
+    }
+
+    /**
+     * Gets the number of ids found by the last query.
+     *
+     * @return The number of ids
+     */
+    int size() {
+        return count;
+    }
+
+    // Empties the buffer before a query.
+    void clear() {
+        count = 0;
+        ordered = true;
+    }
+
+    // Inserts keeping ids sorted and unique; a box spanning several
+    // cells is seen once per cell, and queries return only a handful.
+    void add(int id) {
+        int k = count;
+        while (k > 0 && ids[k - 1] > id) {
+            k--;
+        }
+        if (k > 0 && ids[k - 1] == id) {
+            return;
+        }
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        System.arraycopy(ids, k, ids, k + 1, count - k);
+        ids[k] = id;
+        count++;
+    }
+
+    // Appends an id known not to be in the buffer yet, for queries
+    // that see each id once and may find many.
+    void append(int id) {
+        if (count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+        }
+        if (count > 0 && ids[count - 1] > id) {
+            ordered = false;
+        }
+        ids[count++] = id;
+    }
+
+    // Puts the ids appended since the last clear in ascending order.
+    void sort() {
+        if (!ordered) {
+            Arrays.sort(ids, 0, count);
+            ordered = true;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays a game written by {@link InputRecorder} on a headless simulation.
+ * The inputs come from a {@link ReplayController}; ticks between them run
+ * back to back without any pacing, so a recorded session replays as fast
+ * as the CPU allows and ends in exactly the state the original game was in.
+ */
+public class Replay {
+    private final Path base;
+    private Simulation simulation;
+    private boolean ended = false;
+    private long expectedChecksum;
+
+    /**
+     * Creates a replay of the recording at the given path.
+     *
+     * @param base The path of the recording, without the segment suffix
+     */
+    public Replay(Path base) {
+        this.base = base;
+    }
+
+    /**
+     * Plays the whole recording.
+     *
+     * @return The simulation, in its state at the end of the recording
+     * @throws IOException if a segment cannot be read or is malformed
+     */
+    public Simulation run() throws IOException {
+        try (ReplayController controller = new ReplayController(base)) {
+            simulation = new Simulation(controller.getConfig());
+            simulation.step(controller.getStartTick());
+            try {
+                while (!controller.isFinished()) {
+                    simulation.step(Math.max(0, controller.getNextTick()
+                            - simulation.getTickCount()));
+                    controller.update(simulation);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            ended = controller.isComplete();
+            expectedChecksum = controller.getExpectedChecksum();
+        }
+        return simulation;
+    }
+
+    /**
+     * Checks if the recording was closed properly, with an end record.
+     *
+     * @return true if the end of the game was recorded, false otherwise
+     */
+    public boolean isComplete() {
+        return ended;
+    }
+
+    /**
+     * Checks if the replay ended in the same state the recorded game did.
+     *
+     * @return true if the checksums match, false otherwise or if the
+     *         recording has no end record
+     */
+    public boolean isVerified() {
+        return ended && simulation.checksum() == expectedChecksum;
+    }
+
+    /**
+     * Replays each recording named on the command line and reports how it
+     * ended.
+     *
+     * @param args The paths of the recordings, without the segment suffix
+     * @throws IOException if a recording cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        for (String arg : args) {
+            Replay replay = new Replay(Paths.get(arg));
+            long start = System.nanoTime();
+            Simulation result = replay.run();
+            long millis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println(arg + ": " + result.getTickCount() + " ticks in "
+                    + millis + " ms, score " + result.getScore() + ", lives "
+                    + result.getLives() + ", "
+                    + (!replay.isComplete() ? "unterminated"
+                            : replay.isVerified() ? "verified" : "MISMATCH"));
+        }
+    }
+}
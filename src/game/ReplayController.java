@@ -0,0 +1,239 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Plays the paddle from a recording written by {@link InputRecorder}: each
+ * recorded input is applied on the tick it was recorded on. Segments are
+ * read as play reaches them, so a recording of any length is replayed
+ * through one small buffer.
+ *
+ * The controlled simulation must be made from {@link #getConfig()} and be
+ * at {@link #getStartTick()} when play begins. Recordings made by earlier
+ * versions still play: config fields they did not record, and the whole
+ * config of the first recordings, take their classic values.
+ */
+public class ReplayController implements PaddleController, Closeable {
+    private final Path base;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private FileChannel channel;
+    private int segment = -1;
+
+    private GameConfig config;
+    private long startTick;
+    private long nextTick;   // tick of the record waiting in nextCode
+    private int nextCode = -1;
+    private boolean ended = false;
+    private boolean finished = false;
+    private long expectedChecksum;
+
+    /**
+     * Opens a recording and reads its first segment's header.
+     *
+     * @param base The path of the recording, without the segment suffix
+     * @throws IOException if there is no recording or it is malformed
+     */
+    public ReplayController(Path base) throws IOException {
+        this.base = base;
+        if (!openSegment()) {
+            throw new IOException("No recording at " + base);
+        }
+        startTick = nextTick;
+        readNext();
+    }
+
+    /**
+     * Gets the config of the recorded game.
+     *
+     * @return The config
+     */
+    public GameConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Gets the tick the recording starts at.
+     *
+     * @return The tick count the simulation must have before play begins
+     */
+    public long getStartTick() {
+        return startTick;
+    }
+
+    /**
+     * Gets the tick of the next recorded input or of the end record.
+     *
+     * @return The tick, or Long.MAX_VALUE once the recording is used up
+     */
+    public long getNextTick() {
+        return finished ? Long.MAX_VALUE : nextTick;
+    }
+
+    /**
+     * Checks if every record has been played.
+     *
+     * @return true if nothing is left to play, false otherwise
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Checks if the recording was closed properly, with an end record, and
+     * play has reached it.
+     *
+     * @return true if the end of the game was played, false otherwise
+     */
+    public boolean isComplete() {
+        return ended;
+    }
+
+    /**
+     * Gets the checksum stored in the end record.
+     *
+     * @return The checksum the recorded game ended with, if
+     *         {@link #isComplete()}
+     */
+    public long getExpectedChecksum() {
+        return expectedChecksum;
+    }
+
+    /**
+     * Applies the inputs recorded for the simulation's current tick.
+     *
+     * @param simulation The simulation to control
+     * @throws UncheckedIOException if the recording cannot be read
+     */
+    @Override
+    public void update(Simulation simulation) {
+        try {
+            while (!finished && nextTick <= simulation.getTickCount()) {
+                if (nextCode == InputRecorder.END) {
+                    expectedChecksum = read(8).getLong();
+                    ended = true;
+                    finish();
+                    return;
+                }
+                simulation.apply(Input.fromCode(nextCode));
+                readNext();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the segment being read.
+     *
+     * @throws IOException if it cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void finish() throws IOException {
+        finished = true;
+        close();
+    }
+
+    // Reads the next record's tick and code, moving on to the next segment
+    // at the end of this one.
+    private void readNext() throws IOException {
+        while (!fill(2)) {
+            if (!openSegment()) {
+                finish();
+                return;
+            }
+        }
+        nextTick += readVarint();
+        nextCode = buffer.get() & 0xFF;
+    }
+
+    private boolean openSegment() throws IOException {
+        Path path = InputRecorder.segmentPath(base, segment + 1);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        close();
+        segment++;
+        channel = FileChannel.open(path);
+        buffer.clear().flip();
+
+        ByteBuffer header = read(5);
+        if (header.getInt() != InputRecorder.MAGIC) {
+            throw new IOException("Not a recording segment: " + segment);
+        }
+        int version = header.get();
+        if (version < 1 || version > InputRecorder.VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        // The first recordings held only the field size, before the index
+        int width = 0, height = 0;
+        if (version == 1) {
+            header = read(8);
+            width = header.getInt();
+            height = header.getInt();
+        }
+        header = read(12);
+        if (header.getInt() != segment) {
+            throw new IOException("Segment out of order: " + segment);
+        }
+        nextTick = header.getLong();
+        GameConfig read;
+        if (version == 1) {
+            read = new GameConfig(width, height);
+        } else {
+            int length = read(4).getInt();
+            ByteBuffer configBytes = read(length).slice();
+            configBytes.limit(length);
+            read = GameConfig.read(configBytes);
+            buffer.position(buffer.position() + length);
+        }
+        if (config == null) {
+            config = read;
+        }
+        return true;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = read(1).get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // Makes sure count bytes are buffered and returns the buffer to read
+    // them from.
+    private ByteBuffer read(int count) throws IOException {
+        if (!fill(count)) {
+            throw new IOException("Truncated recording segment: " + segment);
+        }
+        return buffer;
+    }
+
+    // Makes sure at least count bytes are buffered; false at end of file.
+    private boolean fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < count && channel.read(buffer) > 0) {
+        }
+        buffer.flip();
+        return buffer.remaining() >= count;
+    }
+}
@@ -0,0 +1,183 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Command-line batch runner that plays many headless games with a scripted
+ * paddle and prints aggregate statistics, one CSV row per configuration.
+ *
+ * Options taking a list run every combination of their values:
+ *   --games N            games per configuration (default 100)
+ *   --threads N          worker threads (default: one per core)
+ *   --max-ticks N        ticks before a game is abandoned (default 1000000)
+ *   --paddle-speed A,B   paddle speeds to try (default 5)
+ *   --ball-speed A,B     ball speeds to try; serves at (s, -s) (default 3)
+ *   --rows A,B           block grid rows to try (default 5)
+ *   --cols A,B           block grid columns to try (default 11)
+ *   --controller NAME    tracker, which follows the ball, or autopilot,
+ *                        which predicts where it lands (default tracker)
+ */
+public class SelfPlay {
+
+    /**
+     * Outcome of one game.
+     */
+    static class Result {
+        int score;
+        int livesLost;
+        long ticks;
+        boolean cleared;
+        long paddleHits;
+    }
+
+    /**
+     * Plays one game to the end, or until it runs out of ticks.
+     * Each game gets its own aim offset, derived from the seed, so games in
+     * a batch follow different paths.
+     *
+     * @param config The game's constants
+     * @param seed Picks the controller's aim
+     * @param maxTicks The most ticks to play
+     * @param autopilot true to play with an {@link Autopilot}, false for a
+     *        {@link BallTracker}
+     * @return The outcome
+     */
+    static Result play(GameConfig config, int seed, long maxTicks,
+            boolean autopilot) {
+        Simulation simulation = new Simulation(config);
+        double offset = ((seed * 37) % 61) - 30;
+        simulation.setPaddleController(autopilot ? new Autopilot(offset, 3)
+                : new BallTracker(offset, 3));
+
+        while (simulation.getTickCount() < maxTicks && !simulation.isGameOver()
+                && !simulation.isWon()) {
+            simulation.tick();
+        }
+
+        Result result = new Result();
+        result.score = simulation.getScore();
+        result.livesLost = config.lives - simulation.getLives();
+        result.ticks = simulation.getTickCount();
+        result.cleared = simulation.isWon();
+        result.paddleHits = simulation.getPaddleHits();
+        return result;
+    }
+
+    /**
+     * Runs the batch described by the command line.
+     *
+     * @param args Command line arguments, see the class description
+     * @throws InterruptedException if interrupted while waiting for games
+     * @throws ExecutionException if a game fails
+     */
+    public static void main(String[] args)
+            throws InterruptedException, ExecutionException {
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxTicks = 1_000_000;
+        int[] paddleSpeeds = {5};
+        int[] ballSpeeds = {3};
+        int[] rows = {5};
+        int[] cols = {11};
+        boolean autopilot = false;
+
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--games": games = Integer.parseInt(value); break;
+            case "--threads": threads = Integer.parseInt(value); break;
+            case "--max-ticks": maxTicks = Long.parseLong(value); break;
+            case "--paddle-speed": paddleSpeeds = parseList(value); break;
+            case "--ball-speed": ballSpeeds = parseList(value); break;
+            case "--rows": rows = parseList(value); break;
+            case "--cols": cols = parseList(value); break;
+            case "--controller":
+                if (!value.equals("tracker") && !value.equals("autopilot")) {
+                    throw new IllegalArgumentException("Unknown controller " + value);
+                }
+                autopilot = value.equals("autopilot");
+                break;
+            default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<GameConfig> configs = new ArrayList<GameConfig>();
+        for (int paddleSpeed : paddleSpeeds) {
+            for (int ballSpeed : ballSpeeds) {
+                for (int rowCount : rows) {
+                    for (int colCount : cols) {
+                        GameConfig config = new GameConfig();
+                        config.paddleSpeed = paddleSpeed;
+                        config.ballSpeedX = ballSpeed;
+                        config.ballSpeedY = -ballSpeed;
+                        config.rows = rowCount;
+                        config.cols = colCount;
+                        configs.add(config);
+                    }
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            // Queue everything first so the pool never waits on a slow config
+            List<List<Future<Result>>> pending = new ArrayList<List<Future<Result>>>();
+            for (GameConfig config : configs) {
+                List<Future<Result>> results = new ArrayList<Future<Result>>();
+                for (int game = 0; game < games; game++) {
+                    final int seed = game;
+                    final long limit = maxTicks;
+                    final boolean predict = autopilot;
+                    results.add(pool.submit(() -> play(config, seed, limit, predict)));
+                }
+                pending.add(results);
+            }
+
+            System.out.println("paddleSpeed,ballSpeed,rows,cols,games,cleared,"
+                    + "meanScore,meanLivesLost,meanTicksToClear,meanPaddleHits");
+            for (int c = 0; c < configs.size(); c++) {
+                GameConfig config = configs.get(c);
+                long score = 0, livesLost = 0, clearTicks = 0, paddleHits = 0;
+                int cleared = 0;
+                for (Future<Result> future : pending.get(c)) {
+                    Result result = future.get();
+                    score += result.score;
+                    livesLost += result.livesLost;
+                    paddleHits += result.paddleHits;
+                    if (result.cleared) {
+                        cleared++;
+                        clearTicks += result.ticks;
+                    }
+                }
+                System.out.printf("%d,%d,%d,%d,%d,%d,%.1f,%.2f,%s,%.1f%n",
+                        config.paddleSpeed, (int)config.ballSpeedX, config.rows,
+                        config.cols, games, cleared, (double)score / games,
+                        (double)livesLost / games,
+                        cleared == 0 ? "" : String.format("%.0f", (double)clearTicks / cleared),
+                        (double)paddleHits / games);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.err.printf("%d games in %.1f s%n", configs.size() * games,
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    private static int[] parseList(String value) {
+        String[] parts = value.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
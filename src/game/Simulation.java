@@ -0,0 +1,1130 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Headless core of the Breakout game.
+ * Owns the balls, paddle, blocks, score and lives, and advances them on a
+ * fixed timestep independently of how (or whether) the game is drawn.
+ * Renderers observe the simulation; they never drive it.
+ */
+public class Simulation {
+    /** Length of one simulation tick in nanoseconds (10 ms). */
+    public static final long TICK_NANOS = 10_000_000L;
+
+    /** Maximum number of ticks a single call to advance will run. */
+    public static final int MAX_TICKS_PER_ADVANCE = 25;
+
+    /** Maximum number of surfaces a ball can bounce off in one tick. */
+    public static final int MAX_BOUNCES_PER_TICK = 4;
+
+    /** Ball count from which contact searches are split across cores. */
+    public static final int PARALLEL_BALLS = 64;
+
+    /** Most balls a multi-ball power-up brings the game up to. */
+    public static final int MULTI_BALL_LIMIT = 12;
+
+    /** What the slow-ball power-up multiplies ball speeds by. */
+    public static final double SLOW_FACTOR = 0.5;
+
+    /** "BRKS", at the start of every state written by writeState. */
+    static final int STATE_MAGIC = 0x42524B53;
+    static final byte STATE_VERSION = 2;
+
+    private final GameConfig config;
+    private final int width;
+    private final int height;
+
+    private ArrayList<Ball> balls = new ArrayList<Ball>();
+    private List<Ball> ballView = Collections.unmodifiableList(balls);
+    private ArrayList<Ball> spareBalls = new ArrayList<Ball>();
+    private BlockManager blockManager;
+    private EndlessField field; // null unless in endless mode
+    private Paddle paddle;
+    private final ItemStore items = new ItemStore();
+    private int wideTicks, slowTicks; // ticks left of timed power-ups
+
+    private boolean gameStarted = false;
+    private int score = 0;
+    private int lives = 3;
+    private long paddleHits = 0;
+
+    // Per-ball scratch for the collision rounds, indexed like balls
+    private Contact[] contacts = new Contact[4];
+    private double[] remaining = new double[4];
+
+    private long accumulator = 0;
+    private long tickCount = 0;
+    private ArrayList<TickListener> listeners = new ArrayList<TickListener>();
+    private ArrayList<InputListener> inputListeners = new ArrayList<InputListener>();
+    private PaddleController controller;
+    private Metrics metrics;
+
+    /**
+     * Callback notified after every simulation tick.
+     * Used by renderers and tools that want to follow the game state.
+     */
+    public interface TickListener {
+        /**
+         * Called once the simulation has finished a tick.
+         *
+         * @param simulation The simulation that ticked
+         */
+        void onTick(Simulation simulation);
+    }
+
+    /**
+     * Callback notified of every input applied to the simulation.
+     * Used to record games for replay.
+     */
+    public interface InputListener {
+        /**
+         * Called after an input has been applied.
+         *
+         * @param simulation The simulation the input was applied to
+         * @param input The input
+         */
+        void onInput(Simulation simulation, Input input);
+    }
+
+    /**
+     * Creates a new simulation with a playing field of the given size.
+     *
+     * @param width The width of the playing field
+     * @param height The height of the playing field
+     */
+    public Simulation(int width, int height) {
+        this(new GameConfig(width, height));
+    }
+
+    /**
+     * Creates a new simulation of a game with the given constants.
+     *
+     * @param config The game's constants; later changes to it have no effect
+     * @throws UncheckedIOException if the config names a level that cannot
+     *         be read
+     */
+    public Simulation(GameConfig config) {
+        this.config = config.clone();
+        this.width = config.width;
+        this.height = config.height;
+        newGame();
+    }
+
+    /**
+     * Registers a listener to be notified after every tick.
+     *
+     * @param listener The listener to add
+     */
+    public void addTickListener(TickListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered tick listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeTickListener(TickListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener to be notified of every input.
+     *
+     * @param listener The listener to add
+     */
+    public void addInputListener(InputListener listener) {
+        inputListeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered input listener.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeInputListener(InputListener listener) {
+        inputListeners.remove(listener);
+    }
+
+    /**
+     * Sets what plays the paddle. The controller is asked for its inputs at
+     * the start of every tick, on the thread that runs the simulation, so
+     * that thread alone touches the game state. The keyboard's
+     * {@link InputQueue}, a {@link ReplayController} and an
+     * {@link Autopilot} are all controllers.
+     *
+     * @param controller The controller, or null to take inputs only from
+     *        calls to {@link #apply(Input)}
+     */
+    public void setPaddleController(PaddleController controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Gets what plays the paddle.
+     *
+     * @return The controller, or null if none is set
+     */
+    public PaddleController getPaddleController() {
+        return controller;
+    }
+
+    /**
+     * Sets where the simulation reports tick times, allocations and
+     * collision tests.
+     *
+     * @param metrics The metrics, or null to stop measuring
+     */
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the metrics the simulation reports to.
+     *
+     * @return The metrics, or null if none are set
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Applies a player input before the next tick.
+     *
+     * @param input The input to apply
+     */
+    public void apply(Input input) {
+        switch (input) {
+        case LEFT_PRESSED:
+            paddle.setMovingLeft(true);
+            break;
+        case LEFT_RELEASED:
+            paddle.setMovingLeft(false);
+            break;
+        case RIGHT_PRESSED:
+            paddle.setMovingRight(true);
+            break;
+        case RIGHT_RELEASED:
+            paddle.setMovingRight(false);
+            break;
+        case START:
+            gameStarted = true;
+            break;
+        case RESTART:
+            newGame();
+            break;
+        }
+        for (int i = 0; i < inputListeners.size(); i++) {
+            inputListeners.get(i).onInput(this, input);
+        }
+    }
+
+    /**
+     * Adds elapsed wall-clock time to the accumulator and runs as many fixed
+     * ticks as it covers. At most MAX_TICKS_PER_ADVANCE ticks are run per call;
+     * any backlog beyond that is dropped so a long stall cannot snowball.
+     *
+     * @param elapsedNanos The time elapsed since the previous call
+     * @return The number of ticks that were run
+     */
+    public int advance(long elapsedNanos) {
+        accumulator += Math.max(0, elapsedNanos);
+        int ticks = 0;
+        while (accumulator >= TICK_NANOS && ticks < MAX_TICKS_PER_ADVANCE) {
+            tick();
+            accumulator -= TICK_NANOS;
+            ticks++;
+        }
+        if (ticks == MAX_TICKS_PER_ADVANCE) {
+            accumulator = Math.min(accumulator, TICK_NANOS - 1);
+        }
+        return ticks;
+    }
+
+    /**
+     * Runs the given number of ticks back to back, without any pacing.
+     *
+     * @param ticks The number of ticks to run
+     */
+    public void step(long ticks) {
+        for (long i = 0; i < ticks; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Advances the game state by exactly one tick.
+     * Asks the paddle controller for its inputs, then handles ball
+     * movement, collisions, and game logic.
+     */
+    public void tick() {
+        if (metrics != null) {
+            metrics.beginTick();
+        }
+        if (controller != null) {
+            controller.update(this);
+        }
+        tickCount++;
+        if (gameStarted && !isGameOver() && !isWon()) {
+            update();
+        }
+        if (metrics != null) {
+            metrics.endTick(takeCollisionTests());
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onTick(this);
+        }
+    }
+
+    private void update() {
+        // Update paddle position
+        paddle.update(width);
+        if (field != null) {
+            field.scroll(config.scrollSpeed);
+        }
+
+        long start = metrics != null ? System.nanoTime() : 0;
+        moveBalls();
+        if (metrics != null) {
+            metrics.record(Metrics.Metric.COLLISIONS, System.nanoTime() - start);
+        }
+
+        for (int i = balls.size() - 1; i >= 0; i--) {
+            Ball ball = balls.get(i);
+            ball.rotateBall(1);
+
+            // Handle wall collisions
+            if (ball.getX() - ball.getRadius() <= 0) {
+                ball.setSpeed(Math.abs(ball.getSpeedX()), ball.getSpeedY());
+            } else if (ball.getX() + ball.getRadius() >= width) {
+                ball.setSpeed(-Math.abs(ball.getSpeedX()), ball.getSpeedY());
+            }
+            if (ball.getY() - ball.getRadius() <= 0) {
+                ball.setSpeed(ball.getSpeedX(), Math.abs(ball.getSpeedY()));
+            }
+
+            // Handle balls falling off the bottom
+            if (ball.getY() > height) {
+                spareBalls.add(balls.remove(i));
+            }
+        }
+
+        updateItems();
+        if (wideTicks > 0 && --wideTicks == 0) {
+            setPaddleWidth(paddleWidth(false));
+        }
+        if (slowTicks > 0 && --slowTicks == 0) {
+            scaleBallSpeeds(1 / SLOW_FACTOR);
+        }
+
+        // A life is only lost when the last ball is gone
+        if (balls.isEmpty()) {
+            lives--;
+            resetBall();
+        }
+    }
+
+    /**
+     * Moves every ball through one tick of travel. Each ball stops at the
+     * first surface on its path, bounces, and carries on with the rest of
+     * its move. Sweeping the whole move means a ball cannot tunnel through
+     * the paddle or a block however fast it goes.
+     *
+     * Each round first searches every ball's path for its first contact.
+     * The search only reads the blocks, so with many balls it is split
+     * across cores. The contacts are then applied one ball at a time in
+     * list order. If two balls reach the same block, the lower-numbered ball
+     * destroys and scores it. The other ball finds the block gone, keeps its
+     * move, and searches again next round. The outcome never depends on
+     * thread timing.
+     */
+    private void moveBalls() {
+        int count = balls.size();
+        while (contacts.length < count) {
+            contacts = Arrays.copyOf(contacts, contacts.length * 2);
+            remaining = Arrays.copyOf(remaining, contacts.length);
+        }
+        for (int i = 0; i < count; i++) {
+            if (contacts[i] == null) {
+                contacts[i] = new Contact();
+            }
+            remaining[i] = 1;
+        }
+
+        // Sweeps must not build the index or transform the paddle concurrently
+        blockManager.ensureIndex();
+        paddle.getPoints();
+
+        for (int bounce = 0; bounce < MAX_BOUNCES_PER_TICK; bounce++) {
+            if (count >= PARALLEL_BALLS) {
+                ForkJoinPool.commonPool().invoke(new ContactSearch(0, count));
+            } else {
+                findContacts(0, count);
+            }
+
+            boolean moving = false;
+            for (int i = 0; i < count; i++) {
+                moving |= applyContact(i);
+            }
+            if (!moving) {
+                return;
+            }
+        }
+    }
+
+    private long takeCollisionTests() {
+        long tests = 0;
+        for (Contact contact : contacts) {
+            if (contact != null) {
+                tests += contact.takeTestCount();
+            }
+        }
+        return tests;
+    }
+
+    /**
+     * Finds the first contact on the rest of each ball's move.
+     */
+    private void findContacts(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Contact contact = contacts[i];
+            contact.reset();
+            if (remaining[i] > 0) {
+                Ball ball = balls.get(i);
+                double dx = ball.getSpeedX() * remaining[i];
+                double dy = ball.getSpeedY() * remaining[i];
+                paddle.sweep(ball, dx, dy, contact);
+                blockManager.sweep(ball, dx, dy, contact);
+                if (field != null) {
+                    field.sweep(ball, dx, dy, contact);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves one ball up to its contact and bounces it.
+     *
+     * @return true if the ball still has some of its move left
+     */
+    private boolean applyContact(int i) {
+        if (remaining[i] <= 0) {
+            return false;
+        }
+        Ball ball = balls.get(i);
+        Contact contact = contacts[i];
+        double dx = ball.getSpeedX() * remaining[i];
+        double dy = ball.getSpeedY() * remaining[i];
+
+        if (!contact.hasHit()) {
+            ball.moveBall(dx, dy);
+            remaining[i] = 0;
+            return false;
+        }
+
+        BlockManager.Block block = null;
+        if (contact.getBlock() >= 0) {
+            block = blockManager.getBlock(contact.getBlock());
+            if (!block.isVisible()) {
+                return true; // taken by an earlier ball this round
+            }
+        }
+        int cell = contact.getCell();
+        if (cell >= 0 && !field.isLive(cell)) {
+            return true;
+        }
+
+        ball.moveBall(dx * contact.getTime(), dy * contact.getTime());
+        remaining[i] *= 1 - contact.getTime();
+
+        if (cell >= 0) {
+            if (field.hit(cell)) {
+                dropPowerUp(cell, ball);
+            }
+            if (!field.isIndestructible(cell)) {
+                score += 10;
+            }
+            bounce(ball, contact.getNormalX(), contact.getNormalY());
+        } else if (block == null) {
+            // Always go up after hitting paddle
+            double speedX = paddle.calculateBallAngle(ball);
+            ball.setSpeed(slowTicks > 0 ? speedX * SLOW_FACTOR : speedX,
+                    -Math.abs(ball.getSpeedY()));
+            paddleHits++;
+        } else {
+            block.handleCollision();
+            if (!block.isIndestructible()) {
+                score += 10;
+            }
+            if (!block.isVisible()) {
+                dropPowerUp(block.getId(), ball);
+            }
+            bounce(ball, contact.getNormalX(), contact.getNormalY());
+        }
+        return remaining[i] > 0;
+    }
+
+    /**
+     * Fork/join task running the contact search over a range of balls.
+     */
+    @SuppressWarnings("serial")
+    private class ContactSearch extends RecursiveAction {
+        private final int from, to;
+
+        ContactSearch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_BALLS) {
+                findContacts(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ContactSearch(from, mid), new ContactSearch(mid, to));
+            }
+        }
+    }
+
+    /**
+     * Sends a ball away from a surface with the given normal. The axis the
+     * normal mostly points along is reversed, which keeps corner hits
+     * behaving like the nearest face.
+     */
+    private void bounce(Ball ball, double normalX, double normalY) {
+        double speedX = ball.getSpeedX(), speedY = ball.getSpeedY();
+        if (Math.abs(normalX) > Math.abs(normalY)) {
+            speedX = normalX > 0 ? Math.abs(speedX) : -Math.abs(speedX);
+        } else {
+            speedY = normalY > 0 ? Math.abs(speedY) : -Math.abs(speedY);
+        }
+        ball.setSpeed(speedX, speedY);
+    }
+
+    /**
+     * Maybe drops a power-up where a ball destroyed a block. Whether one
+     * drops, and which, is a hash of the tick and the block, so drops need
+     * no random state of their own and replay exactly.
+     */
+    private void dropPowerUp(long block, Ball ball) {
+        if (config.powerUpChance <= 0) {
+            return;
+        }
+        long hash = tickCount * 0x9E3779B97F4A7C15L + block * 0xC2B2AE3D27D4EB4FL;
+        hash = (hash ^ (hash >>> 31)) * 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 29;
+        if (Math.floorMod(hash, 100) < config.powerUpChance) {
+            int kind = Math.floorMod(hash >>> 8, PowerUp.COUNT);
+            items.spawn(PowerUp.fromCode(kind), ball.getX(), ball.getY());
+        }
+    }
+
+    /**
+     * Lets the items fall, gives the power-up of each the paddle catches
+     * and drops those that leave the field.
+     */
+    private void updateItems() {
+        if (items.size() == 0) {
+            return;
+        }
+        items.fall(config.itemSpeed);
+        double halfWidth = ItemStore.WIDTH / 2.0, halfHeight = ItemStore.HEIGHT / 2.0;
+        // Most items are still well above the paddle
+        double reach = paddle.getTop() - halfHeight;
+        for (int i = items.size() - 1; i >= 0; i--) {
+            double x = items.getX(i), y = items.getY(i);
+            if (y < reach) {
+                continue;
+            }
+            if (paddle.checkCollision(x - halfWidth, y - halfHeight,
+                    x + halfWidth, y + halfHeight)) {
+                PowerUp powerUp = items.getPowerUp(i);
+                items.remove(i);
+                collect(powerUp);
+            } else if (y - halfHeight > height) {
+                items.remove(i);
+            }
+        }
+    }
+
+    private void collect(PowerUp powerUp) {
+        switch (powerUp) {
+        case WIDE_PADDLE:
+            if (wideTicks == 0) {
+                setPaddleWidth(paddleWidth(true));
+            }
+            wideTicks = config.powerUpTicks;
+            break;
+        case MULTI_BALL:
+            if (!balls.isEmpty()) {
+                Ball first = balls.get(0);
+                int x = (int)first.getX(), y = (int)first.getY();
+                double speedX = first.getSpeedX(), speedY = first.getSpeedY();
+                if (balls.size() < MULTI_BALL_LIMIT) {
+                    addBall(x, y, -speedX, speedY);
+                }
+                if (balls.size() < MULTI_BALL_LIMIT) {
+                    addBall(x, y, speedX, -speedY);
+                }
+            }
+            break;
+        case SLOW_BALL:
+            if (slowTicks == 0) {
+                scaleBallSpeeds(SLOW_FACTOR);
+            }
+            slowTicks = config.powerUpTicks;
+            break;
+        }
+    }
+
+    // Resizes the paddle about its middle. A Polygon sits a quarter of its
+    // size left of its position, so the position moves by a quarter of
+    // the change.
+    private void setPaddleWidth(int width) {
+        double shift = (paddle.getWidth() - width) / 4.0;
+        paddle.setWidth(width);
+        paddle.setPosition(paddle.getX() + shift, paddle.getY());
+    }
+
+    // The wide-paddle power-up makes the paddle half as wide again.
+    private int paddleWidth(boolean wide) {
+        return wide ? config.paddleWidth * 3 / 2 : config.paddleWidth;
+    }
+
+    private void scaleBallSpeeds(double factor) {
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            ball.setSpeed(ball.getSpeedX() * factor, ball.getSpeedY() * factor);
+        }
+    }
+
+    /**
+     * Resets the ball to its initial position, ending any power-ups.
+     * Called when the player loses a life.
+     */
+    private void resetBall() {
+        for (int i = 0; i < balls.size(); i++) {
+            spareBalls.add(balls.get(i));
+        }
+        balls.clear();
+        items.clear();
+        wideTicks = 0;
+        slowTicks = 0;
+        paddle.setWidth(paddleWidth(false));
+        addBall(config.ballX, config.ballY, config.ballSpeedX, config.ballSpeedY);
+        paddle.setPosition(config.paddleX, config.paddleY);
+        gameStarted = false;
+    }
+
+    /**
+     * Puts another ball into play, as for a multi-ball power-up.
+     * Balls that left play are reused, so a ball may be handed out again
+     * once it is gone from {@link #getBalls()}.
+     *
+     * @param x The x-coordinate of the new ball
+     * @param y The y-coordinate of the new ball
+     * @param speedX The distance the ball moves in the x direction per tick
+     * @param speedY The distance the ball moves in the y direction per tick
+     * @return The new ball
+     */
+    public Ball addBall(int x, int y, double speedX, double speedY) {
+        Ball ball;
+        if (spareBalls.isEmpty()) {
+            ball = new Ball(config.ballRadius, x, y);
+        } else {
+            ball = spareBalls.remove(spareBalls.size() - 1);
+            ball.reset(x, y);
+        }
+        ball.setSpeed(speedX, speedY);
+        balls.add(ball);
+        return ball;
+    }
+
+    /**
+     * Starts a fresh game: paddle and ball back in place, every block
+     * restored, full lives. The existing objects are reset, not rebuilt.
+     */
+    public void restart() {
+        apply(Input.RESTART);
+    }
+
+    private void newGame() {
+        score = 0;
+        lives = config.lives;
+        paddleHits = 0;
+        if (paddle == null) {
+            paddle = new Paddle(config.paddleWidth, config.paddleHeight,
+                    config.paddleX, config.paddleY, config.paddleSpeed);
+        } else {
+            paddle.reset(config.paddleX, config.paddleY);
+        }
+        resetBall();
+        if (config.endless) {
+            if (blockManager == null) {
+                blockManager = new BlockManager();
+            }
+            if (field == null) {
+                field = new EndlessField(config, endlessRows());
+            } else {
+                field.reset();
+            }
+        } else if (blockManager == null) {
+            blockManager = new BlockManager();
+            if (config.level != null) {
+                try (LevelPack pack = LevelPack.open(Paths.get(config.level))) {
+                    blockManager.load(pack.level(config.levelIndex));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            } else {
+                blockManager.createBlockGrid(config.rows, config.cols,
+                        config.blockWidth, config.blockHeight, config.gridX,
+                        config.gridY, config.padding, config.colors,
+                        config.hitPoints);
+            }
+        } else {
+            blockManager.reviveAll();
+        }
+    }
+
+    private EndlessField.RowSource endlessRows() {
+        if (config.level == null) {
+            return EndlessField.generated(config.colors);
+        }
+        try (LevelPack pack = LevelPack.open(Paths.get(config.level))) {
+            return EndlessField.fromLevel(pack.level(config.levelIndex), config);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Launches the ball if it is waiting to be served.
+     */
+    public void start() {
+        apply(Input.START);
+    }
+
+    /**
+     * Sets the left movement state of the paddle.
+     *
+     * @param moving true to move left, false to stop moving left
+     */
+    public void setMovingLeft(boolean moving) {
+        apply(moving ? Input.LEFT_PRESSED : Input.LEFT_RELEASED);
+    }
+
+    /**
+     * Sets the right movement state of the paddle.
+     *
+     * @param moving true to move right, false to stop moving right
+     */
+    public void setMovingRight(boolean moving) {
+        apply(moving ? Input.RIGHT_PRESSED : Input.RIGHT_RELEASED);
+    }
+
+    /**
+     * Checks if the player has run out of lives.
+     *
+     * @return true if no lives remain, false otherwise
+     */
+    public boolean isGameOver() {
+        return lives <= 0;
+    }
+
+    /**
+     * Checks if the player has cleared every block.
+     * An endless game is never won.
+     *
+     * @return true if all blocks are destroyed, false otherwise
+     */
+    public boolean isWon() {
+        return field == null && blockManager.allBlocksDestroyed();
+    }
+
+    /**
+     * Checks if the ball is in play.
+     *
+     * @return true if the game has been started, false otherwise
+     */
+    public boolean isStarted() {
+        return gameStarted;
+    }
+
+    /**
+     * Gets the first ball in play.
+     *
+     * @return The first ball
+     */
+    public Ball getBall() {
+        return balls.get(0);
+    }
+
+    /**
+     * Gets every ball in play, in the order they were added.
+     *
+     * @return A read-only view of the balls
+     */
+    public List<Ball> getBalls() {
+        return ballView;
+    }
+
+    /**
+     * Gets the paddle.
+     *
+     * @return The paddle
+     */
+    public Paddle getPaddle() {
+        return paddle;
+    }
+
+    /**
+     * Gets the block manager for the current level.
+     *
+     * @return The block manager
+     */
+    public BlockManager getBlockManager() {
+        return blockManager;
+    }
+
+    /**
+     * Gets the power-ups falling towards the paddle.
+     *
+     * @return The items in play
+     */
+    public ItemStore getItems() {
+        return items;
+    }
+
+    /**
+     * Gets how long a timed power-up has left to run.
+     *
+     * @param powerUp The power-up
+     * @return The ticks left, 0 if it is not running or is not timed
+     */
+    public int getPowerUpTicks(PowerUp powerUp) {
+        switch (powerUp) {
+        case WIDE_PADDLE:
+            return wideTicks;
+        case SLOW_BALL:
+            return slowTicks;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Gets the scrolling block field of an endless game.
+     * The block manager is empty in that mode.
+     *
+     * @return The field, or null if the game is not endless
+     */
+    public EndlessField getEndlessField() {
+        return field;
+    }
+
+    /**
+     * Gets the current score.
+     *
+     * @return The score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the number of lives remaining.
+     *
+     * @return The number of lives
+     */
+    public int getLives() {
+        return lives;
+    }
+
+    /**
+     * Gets the number of times a ball has bounced off the paddle this game.
+     *
+     * @return The paddle hit count
+     */
+    public long getPaddleHits() {
+        return paddleHits;
+    }
+
+    /**
+     * Gets the constants this game was created with.
+     *
+     * @return A copy of the game's config
+     */
+    public GameConfig getConfig() {
+        return config.clone();
+    }
+
+    /**
+     * Gets the number of ticks run since the simulation was created.
+     *
+     * @return The tick count
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Computes a hash of the game state: tick, score, lives, every ball, the
+     * paddle and the remaining blocks. Two runs that end with the same
+     * checksum almost certainly played out identically.
+     *
+     * @return The checksum
+     */
+    public long checksum() {
+        long hash = tickCount;
+        hash = hash * 31 + score;
+        hash = hash * 31 + lives;
+        hash = hash * 31 + (gameStarted ? 1 : 0);
+        for (Ball ball : balls) {
+            hash = hash * 31 + Double.doubleToLongBits(ball.getX());
+            hash = hash * 31 + Double.doubleToLongBits(ball.getY());
+            hash = hash * 31 + Double.doubleToLongBits(ball.getSpeedX());
+            hash = hash * 31 + Double.doubleToLongBits(ball.getSpeedY());
+        }
+        hash = hash * 31 + Double.doubleToLongBits(paddle.getX());
+        hash = hash * 31 + blockManager.getRemainingBlockCount();
+        if (field != null) {
+            hash = hash * 31 + Double.doubleToLongBits(field.getScroll());
+            hash = hash * 31 + field.getRemainingBlockCount();
+        }
+        // Left out while unused, so games without power-ups keep their sums
+        if (items.size() > 0 || wideTicks > 0 || slowTicks > 0) {
+            hash = hash * 31 + wideTicks;
+            hash = hash * 31 + slowTicks;
+            for (int i = 0; i < items.size(); i++) {
+                hash = hash * 31 + items.getPowerUp(i).ordinal();
+                hash = hash * 31 + Double.doubleToLongBits(items.getX(i));
+                hash = hash * 31 + Double.doubleToLongBits(items.getY(i));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the most bytes {@link #writeState} needs for the game as it is
+     * now. The size grows with the number of balls and items in play.
+     *
+     * @return The size in bytes
+     */
+    public int getStateSize() {
+        int size = 4 + 1 + 8 + 1 + 4 + 4 + 8 + 8 + 8 + 1 + 4 + 4 + 4;
+        size += balls.size() * (4 * 8 + 4);
+        size += blockManager.getStateSize() + 1;
+        if (field != null) {
+            size += field.getStateSize();
+        }
+        size += items.getStateSize();
+        return size;
+    }
+
+    /**
+     * Writes everything that changes as the game plays: the tick count,
+     * score and lives, every ball, the paddle and its movement, the
+     * power-ups running, which blocks are left and the falling items.
+     * Together with the config this is enough to carry on the game
+     * exactly, so it serves both for rewinding and for checkpoints.
+     * Nothing is allocated.
+     *
+     * @param out The buffer to write to, with at least
+     *        {@link #getStateSize()} bytes remaining
+     */
+    public void writeState(ByteBuffer out) {
+        out.putInt(STATE_MAGIC).put(STATE_VERSION);
+        out.putLong(tickCount).put((byte)(gameStarted ? 1 : 0));
+        out.putInt(score).putInt(lives).putLong(paddleHits);
+        out.putDouble(paddle.getX()).putDouble(paddle.getY());
+        out.put((byte)((paddle.isMovingLeft() ? 1 : 0)
+                | (paddle.isMovingRight() ? 2 : 0)));
+        out.putInt(wideTicks).putInt(slowTicks);
+        out.putInt(balls.size());
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            out.putDouble(ball.getX()).putDouble(ball.getY());
+            out.putInt((int)ball.getRotation());
+            out.putDouble(ball.getSpeedX()).putDouble(ball.getSpeedY());
+        }
+        blockManager.writeState(out);
+        out.put((byte)(field != null ? 1 : 0));
+        if (field != null) {
+            field.writeState(out);
+        }
+        items.writeState(out);
+    }
+
+    /**
+     * Puts the game back in a state written by {@link #writeState}, from
+     * this simulation or another with the same config, or by a version
+     * from before power-ups. Balls, paddle and blocks are changed in
+     * place. Listeners are not told of the ticks or inputs this skips
+     * over.
+     *
+     * @param in The buffer to read from
+     * @throws IllegalArgumentException if the state is malformed or was
+     *         written by a game with different blocks
+     */
+    public void readState(ByteBuffer in) {
+        try {
+            if (in.getInt() != STATE_MAGIC) {
+                throw new IllegalArgumentException("Not a game state");
+            }
+            byte version = in.get();
+            if (version < 1 || version > STATE_VERSION) {
+                throw new IllegalArgumentException("Unsupported state version " + version);
+            }
+            tickCount = in.getLong();
+            gameStarted = in.get() != 0;
+            score = in.getInt();
+            lives = in.getInt();
+            paddleHits = in.getLong();
+            double paddleX = in.getDouble(), paddleY = in.getDouble();
+            int moving = in.get();
+            wideTicks = version >= 2 ? in.getInt() : 0;
+            slowTicks = version >= 2 ? in.getInt() : 0;
+            paddle.setWidth(paddleWidth(wideTicks > 0));
+            paddle.reset(paddleX, paddleY);
+            paddle.setMovingLeft((moving & 1) != 0);
+            paddle.setMovingRight((moving & 2) != 0);
+
+            int count = in.getInt();
+            if (count < 0 || count > in.remaining() / (4 * 8 + 4)) {
+                throw new IllegalArgumentException("Bad ball count " + count);
+            }
+            while (balls.size() > count) {
+                spareBalls.add(balls.remove(balls.size() - 1));
+            }
+            for (int i = 0; i < count; i++) {
+                double x = in.getDouble(), y = in.getDouble();
+                int rotation = in.getInt();
+                double speedX = in.getDouble(), speedY = in.getDouble();
+                Ball ball;
+                if (i < balls.size()) {
+                    ball = balls.get(i);
+                    ball.reset(x, y);
+                    ball.setSpeed(speedX, speedY);
+                } else {
+                    ball = addBall(0, 0, speedX, speedY);
+                    ball.reset(x, y);
+                }
+                ball.rotateBall(rotation);
+            }
+
+            blockManager.readState(in);
+            boolean endless = in.get() != 0;
+            if (endless != (field != null)) {
+                throw new IllegalArgumentException(endless
+                        ? "State is of an endless game" : "State is not of an endless game");
+            }
+            if (field != null) {
+                field.readState(in);
+            }
+            if (version >= 2) {
+                items.readState(in);
+            } else {
+                items.clear();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated game state", e);
+        }
+    }
+
+    // Sets the counters a mirror of a remote game follows without
+    // simulating it; see StateDecoder.
+    void setProgress(long tickCount, boolean started, int score, int lives) {
+        this.tickCount = tickCount;
+        this.gameStarted = started;
+        this.score = score;
+        this.lives = lives;
+    }
+
+    // Sets which timed power-ups a mirror shows as running, resizing the
+    // paddle where it stands; see StateDecoder.
+    void setPowerUpTicks(int wideTicks, int slowTicks) {
+        this.wideTicks = wideTicks;
+        this.slowTicks = slowTicks;
+        paddle.setWidth(paddleWidth(wideTicks > 0));
+    }
+
+    /**
+     * Saves the game to a file: its config followed by its state. The game
+     * can be carried on later with {@link #loadCheckpoint}, exactly as if
+     * it had never stopped.
+     *
+     * @param path The file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void saveCheckpoint(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024 + getStateSize());
+        buffer.putInt(0);
+        config.write(buffer);
+        buffer.putInt(0, buffer.position() - 4);
+        writeState(buffer);
+        buffer.flip();
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Makes a simulation from a file written by {@link #saveCheckpoint}.
+     *
+     * @param path The file
+     * @return The simulation, in the saved state
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Simulation loadCheckpoint(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        try {
+            int length = buffer.getInt();
+            ByteBuffer configBytes = buffer.slice();
+            configBytes.limit(length);
+            Simulation simulation = new Simulation(GameConfig.read(configBytes));
+            buffer.position(buffer.position() + length);
+            simulation.readState(buffer);
+            return simulation;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Not a checkpoint: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the width of the playing field.
+     *
+     * @return The width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the playing field.
+     *
+     * @return The height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+}
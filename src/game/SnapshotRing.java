@@ -0,0 +1,108 @@
+package game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the state of a simulation after each of its last ticks, so the
+ * game can be wound back. Add it as a tick listener; each tick its state is
+ * written into the oldest slot of a fixed ring of buffers. Slots are only
+ * reallocated when the state outgrows them, as when more balls come into
+ * play, so recording every tick costs a copy and no garbage.
+ */
+public class SnapshotRing implements Simulation.TickListener {
+    private final ByteBuffer[] slots;
+    private int newest = -1; // slot of the latest state
+    private int size = 0;
+
+    /**
+     * Creates a ring holding the given number of states.
+     *
+     * @param capacity The number of ticks that can be wound back, plus one
+     */
+    public SnapshotRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        slots = new ByteBuffer[capacity];
+    }
+
+    @Override
+    public void onTick(Simulation simulation) {
+        save(simulation);
+    }
+
+    /**
+     * Adds the simulation's current state as the newest, replacing the
+     * oldest if the ring is full.
+     *
+     * @param simulation The simulation
+     */
+    public void save(Simulation simulation) {
+        newest = (newest + 1) % slots.length;
+        int needed = simulation.getStateSize();
+        ByteBuffer slot = slots[newest];
+        if (slot == null || slot.capacity() < needed) {
+            // Room for a few more balls, so a growing game does not
+            // reallocate every tick
+            slot = ByteBuffer.allocate(needed + 256);
+            slots[newest] = slot;
+        }
+        slot.clear();
+        simulation.writeState(slot);
+        slot.flip();
+        size = Math.min(size + 1, slots.length);
+    }
+
+    /**
+     * Winds the simulation back, dropping the newest states. The state it
+     * is left in stays in the ring as the newest.
+     *
+     * @param simulation The simulation the states were saved from
+     * @param ticks The number of saved states to go back
+     * @return The number of states actually gone back, fewer than asked
+     *         if the ring runs out
+     */
+    public int rewind(Simulation simulation, int ticks) {
+        if (size == 0) {
+            return 0;
+        }
+        int steps = Math.max(0, Math.min(ticks, size - 1));
+        newest = (newest - steps + slots.length) % slots.length;
+        size -= steps;
+        ByteBuffer slot = slots[newest];
+        simulation.readState(slot);
+        slot.rewind();
+        return steps;
+    }
+
+    /**
+     * Copies the newest state, to keep it apart from the ring.
+     *
+     * @return A buffer holding the state, or null if none is saved
+     */
+    public ByteBuffer latest() {
+        if (size == 0) {
+            return null;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(slots[newest].remaining());
+        copy.put(slots[newest].duplicate()).flip();
+        return copy;
+    }
+
+    /**
+     * Counts the saved states.
+     *
+     * @return The number of states
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forgets every saved state. The buffers are kept for reuse.
+     */
+    public void clear() {
+        size = 0;
+        newest = -1;
+    }
+}
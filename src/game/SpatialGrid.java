@@ -0,0 +1,154 @@
+package game;
+
+import java.util.BitSet;
+
+/**
+ * Uniform-grid broad phase over axis-aligned boxes identified by int ids.
+ * The grid is built in one pass from a known set of boxes and stores each
+ * cell's ids in one flat array, so queries touch only the cells a box covers
+ * and never allocate. Queries write into caller-owned {@link QueryResults}, so
+ * any number of threads can query at once as long as nobody removes ids.
+ * Objects outside the grid bounds are clamped into the border cells, which
+ * keeps queries correct for any input.
+ */
+class SpatialGrid {
+    private final double originX, originY;
+    private final double cellWidth, cellHeight;
+    private final int cols, rows;
+
+    private final int[] cellStart; // first slot of each cell in items
+    private final int[] cellCount; // live ids in each cell
+    private final int[] items;
+
+    /**
+     * Builds a grid over the given boxes. Box i is stored under id i; boxes
+     * whose bit in live is clear are left out.
+     *
+     * @param minX The left edge of each box
+     * @param minY The top edge of each box
+     * @param maxX The right edge of each box
+     * @param maxY The bottom edge of each box
+     * @param live Which boxes to index
+     * @param count The number of boxes
+     * @param cellWidth The width of a grid cell
+     * @param cellHeight The height of a grid cell
+     */
+    SpatialGrid(double[] minX, double[] minY, double[] maxX, double[] maxY,
+            BitSet live, int count, double cellWidth, double cellHeight) {
+        double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            left = Math.min(left, minX[i]);
+            top = Math.min(top, minY[i]);
+            right = Math.max(right, maxX[i]);
+            bottom = Math.max(bottom, maxY[i]);
+        }
+        if (count == 0) {
+            left = top = right = bottom = 0;
+        }
+
+        this.originX = left;
+        this.originY = top;
+        this.cellWidth = Math.max(1, cellWidth);
+        this.cellHeight = Math.max(1, cellHeight);
+        this.cols = Math.max(1, (int)Math.ceil((right - left) / this.cellWidth));
+        this.rows = Math.max(1, (int)Math.ceil((bottom - top) / this.cellHeight));
+
+        // First pass counts the ids per cell, second pass scatters them.
+        cellStart = new int[cols * rows + 1];
+        cellCount = new int[cols * rows];
+        for (int i = 0; i < count; i++) {
+            if (!live.get(i)) continue;
+            int c0 = col(minX[i]), c1 = col(maxX[i]);
+            int r0 = row(minY[i]), r1 = row(maxY[i]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    cellStart[r * cols + c + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < cols * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        items = new int[cellStart[cols * rows]];
+        for (int i = 0; i < count; i++) {
+            if (!live.get(i)) continue;
+            int c0 = col(minX[i]), c1 = col(maxX[i]);
+            int r0 = row(minY[i]), r1 = row(maxY[i]);
+            for (int r = r0; r <= r1; r++) {
+                for (int c = c0; c <= c1; c++) {
+                    int cell = r * cols + c;
+                    items[cellStart[cell] + cellCount[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an id from every cell its box covers.
+     *
+     * @param id The id to remove
+     * @param minX The left edge of the box the id was built with
+     * @param minY The top edge of the box
+     * @param maxX The right edge of the box
+     * @param maxY The bottom edge of the box
+     */
+    void remove(int id, double minX, double minY, double maxX, double maxY) {
+        int c0 = col(minX), c1 = col(maxX);
+        int r0 = row(minY), r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                int start = cellStart[cell];
+                int end = start + cellCount[cell];
+                for (int k = start; k < end; k++) {
+                    if (items[k] == id) {
+                        items[k] = items[end - 1];
+                        cellCount[cell]--;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the ids of every box sharing a cell with the query box.
+     * Each id is reported once, in ascending order.
+     *
+     * @param minX The left edge of the query box
+     * @param minY The top edge of the query box
+     * @param maxX The right edge of the query box
+     * @param maxY The bottom edge of the query box
+     * @param out Receives the ids found, replacing its previous contents
+     * @return The number of ids found
+     */
+    int query(double minX, double minY, double maxX, double maxY,
+            QueryResults out) {
+        out.clear();
+
+        int c0 = col(minX), c1 = col(maxX);
+        int r0 = row(minY), r1 = row(maxY);
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                int start = cellStart[cell];
+                int end = start + cellCount[cell];
+                for (int k = start; k < end; k++) {
+                    out.add(items[k]);
+                }
+            }
+        }
+        return out.size();
+    }
+
+    private int col(double x) {
+        int c = (int)Math.floor((x - originX) / cellWidth);
+        return Math.max(0, Math.min(cols - 1, c));
+    }
+
+    private int row(double y) {
+        int r = (int)Math.floor((y - originY) / cellHeight);
+        return Math.max(0, Math.min(rows - 1, r));
+    }
+}
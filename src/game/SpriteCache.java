@@ -0,0 +1,161 @@
+package game;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+
+/**
+ * Pre-rendered images of the game's shapes, so painting a frame is a series
+ * of image copies instead of polygon fills. Blocks and the paddle share one
+ * image per size and color; the ball has one image per whole degree of
+ * rotation. Images are made the first time they are asked for, so headless
+ * runs never create any.
+ *
+ * The images are plain BufferedImages: Java2D keeps copies of images that
+ * are drawn repeatedly in video memory on its own, without the lost-surface
+ * handling a VolatileImage needs.
+ */
+public class SpriteCache {
+    // Boxes by their size and colors, packed into two longs each
+    private static long[] boxSizes = new long[64], boxColors = new long[64];
+    private static BufferedImage[] boxImages = new BufferedImage[64];
+    private static int boxCount = 0;
+    private static final HashMap<Integer, BufferedImage[]> balls =
+            new HashMap<Integer, BufferedImage[]>();
+
+    private SpriteCache() {
+    }
+
+    /**
+     * Gets the image of a filled rectangle, optionally outlined.
+     * An outlined image is one pixel wider and taller than the rectangle,
+     * since the outline covers the right and bottom edges.
+     *
+     * @param width The width of the rectangle in pixels
+     * @param height The height of the rectangle in pixels
+     * @param fill The fill color
+     * @param outline The outline color, or null for no outline
+     * @return The image, shared by every caller asking for the same box
+     */
+    public static BufferedImage box(int width, int height, Color fill,
+            Color outline) {
+        return box(width, height, fill.getRGB(), outline);
+    }
+
+    /**
+     * Gets the image of a filled rectangle, optionally outlined, as
+     * {@link #box(int, int, Color, Color)} does for a fill given as
+     * 0xAARRGGBB. Looking up an image that was made before allocates
+     * nothing, so this can be called for every block of every frame.
+     *
+     * @param width The width of the rectangle in pixels
+     * @param height The height of the rectangle in pixels
+     * @param fill The fill color as 0xAARRGGBB
+     * @param outline The outline color, or null for no outline
+     * @return The image, shared by every caller asking for the same box
+     */
+    public static synchronized BufferedImage box(int width, int height,
+            int fill, Color outline) {
+        long size = (long)width << 32 | (long)height << 1
+                | (outline == null ? 0 : 1);
+        long colors = (long)fill << 32
+                | (outline == null ? 0 : outline.getRGB() & 0xFFFFFFFFL);
+        int slot = find(size, colors);
+        if (boxImages[slot] != null) {
+            return boxImages[slot];
+        }
+
+        // Opaque boxes skip alpha blending, so drawing one is a plain copy
+        boolean opaque = fill >>> 24 == 255 &&
+                (outline == null || outline.getAlpha() == 255);
+        int edge = outline == null ? 0 : 1;
+        BufferedImage image = new BufferedImage(width + edge, height + edge,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics brush = image.getGraphics();
+        int[] xVals = {0, width, width, 0};
+        int[] yVals = {0, 0, height, height};
+        brush.setColor(new Color(fill, true));
+        brush.fillPolygon(xVals, yVals, 4);
+        if (outline != null) {
+            brush.setColor(outline);
+            brush.drawPolygon(xVals, yVals, 4);
+        }
+        brush.dispose();
+
+        boxSizes[slot] = size;
+        boxColors[slot] = colors;
+        boxImages[slot] = image;
+        if (++boxCount * 2 > boxImages.length) {
+            grow();
+        }
+        return image;
+    }
+
+    // Open addressing on the packed size and colors; gives the box's slot,
+    // or the empty slot where it belongs.
+    private static int find(long size, long colors) {
+        int mask = boxImages.length - 1;
+        long hash = (size * 31 + colors) * 0x9E3779B97F4A7C15L;
+        int slot = (int)(hash >>> 40) & mask;
+        while (boxImages[slot] != null
+                && (boxSizes[slot] != size || boxColors[slot] != colors)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static void grow() {
+        long[] sizes = boxSizes, colors = boxColors;
+        BufferedImage[] images = boxImages;
+        boxSizes = new long[images.length * 2];
+        boxColors = new long[images.length * 2];
+        boxImages = new BufferedImage[images.length * 2];
+        for (int i = 0; i < images.length; i++) {
+            if (images[i] != null) {
+                int slot = find(sizes[i], colors[i]);
+                boxSizes[slot] = sizes[i];
+                boxColors[slot] = colors[i];
+                boxImages[slot] = images[i];
+            }
+        }
+    }
+
+    /**
+     * Gets the frames of a spinning ball, one per degree of rotation.
+     * Frame n shows the ball rotated n degrees, centered on the point
+     * {@link #ballCenter(int)} of the frame.
+     *
+     * @param radius The radius of the ball
+     * @return 360 frames, shared by every ball of this radius
+     */
+    public static synchronized BufferedImage[] ball(int radius) {
+        BufferedImage[] frames = balls.get(radius);
+        if (frames == null) {
+            int center = ballCenter(radius);
+            Ball ball = new Ball(radius, center, center);
+            frames = new BufferedImage[360];
+            for (int degrees = 0; degrees < 360; degrees++) {
+                frames[degrees] = new BufferedImage(center * 2, center * 2,
+                        BufferedImage.TYPE_INT_ARGB);
+                Graphics brush = frames[degrees].getGraphics();
+                ball.paintShape(brush);
+                brush.dispose();
+                ball.rotateBall(1);
+            }
+            balls.put(radius, frames);
+        }
+        return frames;
+    }
+
+    /**
+     * Gets where the ball's center lies in each of its frames.
+     * The points of the star reach a little past the ball's radius, so the
+     * frames leave room for twice that.
+     *
+     * @param radius The radius of the ball
+     * @return The x- and y-coordinate of the center within a frame
+     */
+    public static int ballCenter(int radius) {
+        return radius * 2 + 2;
+    }
+}
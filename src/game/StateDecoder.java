@@ -0,0 +1,209 @@
+package game;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Follows a game played elsewhere by applying the updates of a
+ * {@link StateEncoder} to a local copy of it. The copy is a
+ * {@link Simulation} made from the same config that is never ticked: key
+ * updates are loaded with {@link Simulation#readState}, and other updates
+ * move its balls and paddle, destroy its blocks, scroll its field and
+ * let its items fall.
+ * Renderers draw the copy as they would a local game; a
+ * {@link FrameRenderer} is told of each destroyed block as usual.
+ *
+ * Positions arrive rounded to a sixteenth of a pixel, so the copy's balls
+ * and paddle may be that far off the original's between key updates.
+ */
+public class StateDecoder {
+    private final Simulation mirror;
+    private final double scrollSpeed, itemSpeed;
+
+    // The values the encoder last sent, positions quantized
+    private long tick;
+    private int score, lives;
+    private boolean started;
+    private long paddleX;
+    private long[] ballX = new long[4], ballY = new long[4];
+
+    /**
+     * Creates a decoder for a game with the given config, encoded by this
+     * version of {@link StateEncoder}.
+     *
+     * @param config The config the encoded game was made with
+     */
+    public StateDecoder(GameConfig config) {
+        this(config, StateEncoder.VERSION);
+    }
+
+    /**
+     * Creates a decoder for a game with the given config, encoded in the
+     * given version of the update layout, as a {@link GameServer} sends
+     * in its greeting.
+     *
+     * @param config The config the encoded game was made with
+     * @param version The version of the updates
+     * @throws IllegalArgumentException if this decoder cannot read that
+     *         version
+     */
+    public StateDecoder(GameConfig config, int version) {
+        if (version != StateEncoder.VERSION) {
+            throw new IllegalArgumentException("Unsupported update version "
+                    + version);
+        }
+        mirror = new Simulation(config);
+        scrollSpeed = config.scrollSpeed;
+        itemSpeed = config.itemSpeed;
+    }
+
+    /**
+     * Gets the local copy of the game.
+     *
+     * @return The copy, as of the last update applied
+     */
+    public Simulation getSimulation() {
+        return mirror;
+    }
+
+    /**
+     * Applies one update.
+     *
+     * @param in The buffer holding the update, left just after it
+     * @throws IllegalArgumentException if the update is malformed or does
+     *         not follow on from the last one
+     */
+    public void apply(ByteBuffer in) {
+        try {
+            int flags = in.get() & 0xFF;
+            if ((flags & StateEncoder.KEY) != 0) {
+                applyKey(in);
+            } else {
+                applyDelta(in, flags);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed update", e);
+        }
+    }
+
+    private void applyKey(ByteBuffer in) {
+        int length = in.getInt();
+        ByteBuffer state = in.duplicate();
+        state.limit(state.position() + length);
+        mirror.readState(state);
+        in.position(in.position() + length);
+
+        List<Ball> balls = mirror.getBalls();
+        tick = mirror.getTickCount();
+        score = mirror.getScore();
+        lives = mirror.getLives();
+        started = mirror.isStarted();
+        paddleX = StateEncoder.quantize(mirror.getPaddle().getX());
+        if (ballX.length < balls.size()) {
+            ballX = new long[balls.size() * 2];
+            ballY = new long[balls.size() * 2];
+        }
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            ballX[i] = StateEncoder.quantize(ball.getX());
+            ballY[i] = StateEncoder.quantize(ball.getY());
+        }
+    }
+
+    private void applyDelta(ByteBuffer in, int flags) {
+        long ticks = StateEncoder.getVarint(in);
+        tick += ticks;
+        ItemStore items = mirror.getItems();
+        // Items only fall while the game plays; the encoder sends them
+        // whole when play starts or stops
+        if (mirror.isStarted() && !mirror.isGameOver() && !mirror.isWon()) {
+            for (long i = 0; i < ticks; i++) {
+                items.fall(itemSpeed);
+            }
+        }
+
+        List<Ball> balls = mirror.getBalls();
+        for (int i = 0; i < balls.size(); i++) {
+            Ball ball = balls.get(i);
+            long x = ballX[i] + StateEncoder.unzigzag(StateEncoder.getVarint(in));
+            long y = ballY[i] + StateEncoder.unzigzag(StateEncoder.getVarint(in));
+            int turn = (int)StateEncoder.unzigzag(StateEncoder.getVarint(in));
+            ball.moveBall(x / StateEncoder.SCALE - ball.getX(),
+                    y / StateEncoder.SCALE - ball.getY());
+            ball.rotateBall(turn);
+            ballX[i] = x;
+            ballY[i] = y;
+        }
+
+        if ((flags & StateEncoder.PADDLE) != 0) {
+            paddleX += StateEncoder.unzigzag(StateEncoder.getVarint(in));
+            Paddle paddle = mirror.getPaddle();
+            paddle.setPosition(paddleX / StateEncoder.SCALE, paddle.getY());
+        }
+        if ((flags & StateEncoder.SCORE) != 0) {
+            score += (int)StateEncoder.getVarint(in);
+        }
+        if ((flags & StateEncoder.LIVES) != 0) {
+            lives -= (int)StateEncoder.getVarint(in);
+        }
+        if ((flags & StateEncoder.SERVE) != 0) {
+            started = !started;
+        }
+        EndlessField field = mirror.getEndlessField();
+        if ((flags & StateEncoder.BLOCKS) != 0 && field == null) {
+            BlockManager blocks = mirror.getBlockManager();
+            int count = (int)StateEncoder.getVarint(in);
+            int id = 0;
+            for (int i = 0; i < count; i++) {
+                id += (int)StateEncoder.unzigzag(StateEncoder.getVarint(in));
+                blocks.destroyBlock(id);
+            }
+        }
+        if (field == null && (flags & StateEncoder.SCROLL) != 0) {
+            throw new IllegalArgumentException("Update is for an endless game");
+        }
+        if (field != null) {
+            long steps = 0, scrolled = 0;
+            if ((flags & StateEncoder.SCROLL) != 0) {
+                steps = StateEncoder.getVarint(in);
+            }
+            // Hits come in order with the scrolling, as a hit cell may be
+            // cleared and made into a new row later in the same update
+            if ((flags & StateEncoder.BLOCKS) != 0) {
+                int count = (int)StateEncoder.getVarint(in);
+                long at = 0;
+                for (int i = 0; i < count; i++) {
+                    at += StateEncoder.getVarint(in);
+                    if (at > steps) {
+                        throw new IllegalArgumentException("Hit after the scroll");
+                    }
+                    for (; scrolled < at; scrolled++) {
+                        field.scroll(scrollSpeed);
+                    }
+                    field.hit((int)StateEncoder.getVarint(in));
+                }
+            }
+            for (; scrolled < steps; scrolled++) {
+                field.scroll(scrollSpeed);
+            }
+        }
+        if ((flags & StateEncoder.ITEMS) != 0) {
+            int running = in.get();
+            mirror.setPowerUpTicks(running & 1, (running >> 1) & 1);
+            int count = (int)StateEncoder.getVarint(in);
+            items.clear();
+            for (int i = 0; i < count; i++) {
+                int kind = in.get();
+                if (kind < 0 || kind >= PowerUp.COUNT) {
+                    throw new IllegalArgumentException("Bad power-up " + kind);
+                }
+                long x = StateEncoder.unzigzag(StateEncoder.getVarint(in));
+                long y = StateEncoder.unzigzag(StateEncoder.getVarint(in));
+                items.spawn(PowerUp.fromCode(kind), x / StateEncoder.SCALE,
+                        y / StateEncoder.SCALE);
+            }
+        }
+        mirror.setProgress(tick, started, score, lives);
+    }
+}
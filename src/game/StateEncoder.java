@@ -0,0 +1,309 @@
+package game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns a running game into a stream of small updates, each holding only
+ * what changed since the one before, for a {@link StateDecoder} to follow.
+ *
+ * An update starts with a byte of flags and the ticks since the last one.
+ * Ball and paddle positions go as varint differences in sixteenths of a
+ * pixel, ball rotation as a varint difference in degrees. Score, lives and
+ * serving only go when they change, blocks as the ids of the ones
+ * destroyed, and an endless field as the number of ticks it scrolled and
+ * the cells hit, each with how far the field had scrolled by then, since a
+ * cell may be cleared and used for a new row later in the update. Falling
+ * items are sent whole when one comes or goes or play starts or stops,
+ * along with the power-ups running, and otherwise fall on their own.
+ * Whenever the game changes in a way those cannot carry - the first
+ * update, a ball lost or added, blocks brought back, time going
+ * backwards - a key update holds the whole state instead. A game in
+ * steady play costs five to eight bytes a tick.
+ *
+ * Updates are written into the caller's buffer, and the encoder keeps its
+ * own records in arrays it reuses, so encoding allocates nothing.
+ */
+public class StateEncoder implements BlockManager.BlockListener,
+        EndlessField.CellListener {
+    /**
+     * The layout of the updates written. Version 2 sends endless-field
+     * cells under BLOCKS, each with the scroll ticks before it.
+     */
+    static final byte VERSION = 2;
+
+    // BLOCKS carries cells instead in an endless game, which has no blocks
+    static final int KEY = 1, SCORE = 2, LIVES = 4, SERVE = 8, PADDLE = 16,
+            BLOCKS = 32, SCROLL = 64, ITEMS = 128;
+
+    /** Positions are sent in units of 1/SCALE of a pixel. */
+    static final double SCALE = 16;
+
+    private final Simulation simulation;
+    private final double scrollSpeed;
+    private boolean keyNeeded = true;
+
+    // The game as last sent, positions quantized
+    private long tick;
+    private int score, lives;
+    private boolean started;
+    private double scroll;
+    private long paddleX;
+    private int ballCount;
+    private int itemVersion, powerUps;
+    private boolean playing;
+    private long[] ballX = new long[4], ballY = new long[4];
+    private int[] rotation = new int[4];
+
+    // Events since the last update
+    private int[] destroyed = new int[16];
+    private int destroyedCount;
+    private int[] cells = new int[16];
+    private int[] cellSteps = new int[16]; // scroll ticks before each hit
+    private int cellCount;
+
+    /**
+     * Starts following a simulation. The first update will be a key update.
+     *
+     * @param simulation The game to encode
+     */
+    public StateEncoder(Simulation simulation) {
+        this.simulation = simulation;
+        this.scrollSpeed = simulation.getConfig().scrollSpeed;
+        simulation.getBlockManager().addBlockListener(this);
+        if (simulation.getEndlessField() != null) {
+            simulation.getEndlessField().addCellListener(this);
+        }
+    }
+
+    /**
+     * Stops following the simulation.
+     */
+    public void close() {
+        simulation.getBlockManager().removeBlockListener(this);
+        if (simulation.getEndlessField() != null) {
+            simulation.getEndlessField().removeCellListener(this);
+        }
+    }
+
+    @Override
+    public void onBlockDestroyed(BlockManager.Block block) {
+        if (destroyedCount == destroyed.length) {
+            destroyed = Arrays.copyOf(destroyed, destroyedCount * 2);
+        }
+        destroyed[destroyedCount++] = block.getId();
+    }
+
+    @Override
+    public void onBlocksReset(BlockManager manager) {
+        keyNeeded = true;
+    }
+
+    @Override
+    public void onCellHit(int cell, boolean destroyed) {
+        if (cellCount == cells.length) {
+            cells = Arrays.copyOf(cells, cellCount * 2);
+            cellSteps = Arrays.copyOf(cellSteps, cellCount * 2);
+        }
+        cellSteps[cellCount] = (int)Math.round(
+                (simulation.getEndlessField().getScroll() - scroll) / scrollSpeed);
+        cells[cellCount++] = cell;
+    }
+
+    /**
+     * Gets the most bytes the next update can take.
+     *
+     * @return The size in bytes
+     */
+    public int getMaxUpdateSize() {
+        int delta = 1 + 10 + simulation.getBalls().size() * 25 + 10 + 10
+                + 5 + 5 + 5 * (destroyedCount + 2 * cellCount + 1) + 10
+                + 1 + 5 + simulation.getItems().size() * 21;
+        return Math.max(delta, 1 + 10 + 4 + simulation.getStateSize());
+    }
+
+    /**
+     * Writes an update holding what changed since the last one.
+     *
+     * @param out The buffer to write to, with at least
+     *        {@link #getMaxUpdateSize()} bytes remaining
+     */
+    public void encode(ByteBuffer out) {
+        List<Ball> balls = simulation.getBalls();
+        EndlessField field = simulation.getEndlessField();
+        long now = simulation.getTickCount();
+        if (keyNeeded || now < tick || balls.size() != ballCount
+                || simulation.getLives() > lives
+                || simulation.getScore() < score
+                || (field != null && field.getScroll() < scroll)) {
+            encodeKey(out);
+            return;
+        }
+
+        int flagsAt = out.position();
+        out.put((byte)0);
+        putVarint(out, now - tick);
+        tick = now;
+        int flags = 0;
+
+        for (int i = 0; i < ballCount; i++) {
+            Ball ball = balls.get(i);
+            long x = quantize(ball.getX()), y = quantize(ball.getY());
+            int turn = (int)ball.getRotation();
+            putVarint(out, zigzag(x - ballX[i]));
+            putVarint(out, zigzag(y - ballY[i]));
+            putVarint(out, zigzag(Math.floorMod(turn - rotation[i] + 180, 360) - 180));
+            ballX[i] = x;
+            ballY[i] = y;
+            rotation[i] = turn;
+        }
+
+        long x = quantize(simulation.getPaddle().getX());
+        if (x != paddleX) {
+            flags |= PADDLE;
+            putVarint(out, zigzag(x - paddleX));
+            paddleX = x;
+        }
+        if (simulation.getScore() != score) {
+            flags |= SCORE;
+            putVarint(out, simulation.getScore() - score);
+            score = simulation.getScore();
+        }
+        if (simulation.getLives() != lives) {
+            flags |= LIVES;
+            putVarint(out, lives - simulation.getLives());
+            lives = simulation.getLives();
+        }
+        if (simulation.isStarted() != started) {
+            flags |= SERVE;
+            started = !started;
+        }
+        if (destroyedCount > 0) {
+            flags |= BLOCKS;
+            putVarint(out, destroyedCount);
+            int last = 0;
+            for (int i = 0; i < destroyedCount; i++) {
+                putVarint(out, zigzag(destroyed[i] - last));
+                last = destroyed[i];
+            }
+            destroyedCount = 0;
+        }
+        if (field != null && field.getScroll() != scroll) {
+            flags |= SCROLL;
+            long steps = Math.round((field.getScroll() - scroll) / scrollSpeed);
+            putVarint(out, steps);
+            scroll = field.getScroll();
+        }
+        if (cellCount > 0) {
+            flags |= BLOCKS;
+            putVarint(out, cellCount);
+            int last = 0;
+            for (int i = 0; i < cellCount; i++) {
+                putVarint(out, cellSteps[i] - last);
+                putVarint(out, cells[i]);
+                last = cellSteps[i];
+            }
+            cellCount = 0;
+        }
+        ItemStore items = simulation.getItems();
+        int running = runningPowerUps();
+        if (items.getVersion() != itemVersion || running != powerUps
+                || isPlaying() != playing) {
+            flags |= ITEMS;
+            out.put((byte)running);
+            putVarint(out, items.size());
+            for (int i = 0; i < items.size(); i++) {
+                out.put((byte)items.getPowerUp(i).ordinal());
+                putVarint(out, zigzag(quantize(items.getX(i))));
+                putVarint(out, zigzag(quantize(items.getY(i))));
+            }
+            itemVersion = items.getVersion();
+            powerUps = running;
+            playing = isPlaying();
+        }
+        out.put(flagsAt, (byte)flags);
+    }
+
+    private void encodeKey(ByteBuffer out) {
+        out.put((byte)KEY);
+        int lengthAt = out.position();
+        out.putInt(0);
+        simulation.writeState(out);
+        out.putInt(lengthAt, out.position() - lengthAt - 4);
+        remember();
+        keyNeeded = false;
+        destroyedCount = 0;
+        cellCount = 0;
+    }
+
+    // Takes the game's current values as the ones last sent.
+    private void remember() {
+        List<Ball> balls = simulation.getBalls();
+        tick = simulation.getTickCount();
+        score = simulation.getScore();
+        lives = simulation.getLives();
+        started = simulation.isStarted();
+        EndlessField field = simulation.getEndlessField();
+        scroll = field == null ? 0 : field.getScroll();
+        paddleX = quantize(simulation.getPaddle().getX());
+        itemVersion = simulation.getItems().getVersion();
+        powerUps = runningPowerUps();
+        playing = isPlaying();
+        ballCount = balls.size();
+        if (ballX.length < ballCount) {
+            ballX = Arrays.copyOf(ballX, ballCount * 2);
+            ballY = Arrays.copyOf(ballY, ballCount * 2);
+            rotation = Arrays.copyOf(rotation, ballCount * 2);
+        }
+        for (int i = 0; i < ballCount; i++) {
+            Ball ball = balls.get(i);
+            ballX[i] = quantize(ball.getX());
+            ballY[i] = quantize(ball.getY());
+            rotation[i] = (int)ball.getRotation();
+        }
+    }
+
+    // Items fall only while this holds, as in Simulation.tick.
+    private boolean isPlaying() {
+        return simulation.isStarted() && !simulation.isGameOver()
+                && !simulation.isWon();
+    }
+
+    // One bit per power-up for the timed ones running.
+    private int runningPowerUps() {
+        return (simulation.getPowerUpTicks(PowerUp.WIDE_PADDLE) > 0 ? 1 : 0)
+                | (simulation.getPowerUpTicks(PowerUp.SLOW_BALL) > 0 ? 2 : 0);
+    }
+
+    static long quantize(double position) {
+        return Math.round(position * SCALE);
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void putVarint(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte)value);
+    }
+
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long)(b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}